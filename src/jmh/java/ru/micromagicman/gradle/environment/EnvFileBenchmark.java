@@ -0,0 +1,88 @@
+package ru.micromagicman.gradle.environment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Hot paths of {@link EnvFile} and {@link EnvFileBuilder}: parsing, merging with sensitive key filtering, flushing and applying to a task.
+ * <p>
+ * Run with {@code ./gradlew jmh}; allocations per operation are reported by the GC profiler
+ * as {@code gc.alloc.rate.norm}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class EnvFileBenchmark {
+
+    @Param( { "100", "1000", "10000" } )
+    int entries;
+
+    @Param( { "2", "20", "200" } )
+    int sensitivePatterns;
+
+    private File sourceFile;
+    private File outputFile;
+    private EnvFile source;
+    private EnvFileBuilder merged;
+    private Predicate<String> keyPredicate;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        sourceFile = EnvironmentBenchmarks.createEnvFile( entries );
+        outputFile = Files.createTempFile( "benchmark", ".env.example" ).toFile();
+        source = new EnvFile( sourceFile, EnvFile.parseEnvironmentFile( sourceFile ) );
+        keyPredicate = GenerateExampleEnvFileTask.nonSensitiveKeys(
+                EnvironmentBenchmarks.sensitivePatterns( sensitivePatterns )
+        );
+        merged = EnvFileBuilder.create( outputFile ).mergeWith( source, keyPredicate );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        Files.deleteIfExists( sourceFile.toPath() );
+        Files.deleteIfExists( outputFile.toPath() );
+    }
+
+    @Benchmark
+    public Map<String, String> parseEnvironmentFile() {
+        return EnvFile.parseEnvironmentFile( sourceFile );
+    }
+
+    @Benchmark
+    public EnvFileBuilder mergeWith() {
+        return EnvFileBuilder.create( outputFile ).mergeWith( source, keyPredicate );
+    }
+
+    @Benchmark
+    public void flush() {
+        merged.flush();
+    }
+
+    @Benchmark
+    public RecordingProcessForkOptions applyForTask() {
+        final RecordingProcessForkOptions task = new RecordingProcessForkOptions();
+        source.applyForTask( task );
+        return task;
+    }
+}
@@ -0,0 +1,75 @@
+package ru.micromagicman.gradle.environment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the single-pass {@link EnvFileParser} against the former
+ * {@code BufferedReader} + {@code String.split} implementation.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class EnvFileParserBenchmark {
+
+    @Param( { "10000", "100000" } )
+    int entries;
+
+    private File file;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        file = EnvironmentBenchmarks.createEnvFile( entries );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        Files.deleteIfExists( file.toPath() );
+    }
+
+    @Benchmark
+    public Map<String, String> singlePassParser() throws IOException {
+        return EnvFileParser.parse( file.toPath() );
+    }
+
+    @Benchmark
+    public Map<String, String> splitParser() throws IOException {
+        final Map<String, String> variables = new LinkedHashMap<>();
+        try ( final BufferedReader reader = new BufferedReader( new FileReader( file ) ) ) {
+            String line = reader.readLine();
+            while ( null != line ) {
+                if ( !line.isBlank() ) {
+                    final String[] split = line.split( "=" );
+                    if ( split.length >= 2 ) {
+                        variables.put( split[0].trim(), split[1].trim() );
+                    }
+                }
+                line = reader.readLine();
+            }
+        }
+        return variables;
+    }
+}
@@ -0,0 +1,84 @@
+package ru.micromagicman.gradle.environment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-task environment resolution for a build with thousands of forking tasks: copying all layers
+ * into a merged map for every task versus sharing the layers through {@link EnvOverlay}.
+ * <p>
+ * Allocations per operation are reported by the GC profiler as {@code gc.alloc.rate.norm}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class EnvOverlayBenchmark {
+
+    @Param( { "1000", "5000" } )
+    int tasks;
+
+    @Param( { "100", "1000" } )
+    int entries;
+
+    private File sourceFile;
+    private Map<String, String> base;
+    private Map<String, String> local;
+    private Map<String, String> profile;
+    private Map<String, String> overrides;
+    private EnvOverlay overlay;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        sourceFile = EnvironmentBenchmarks.createEnvFile( entries );
+        base = EnvFile.parseEnvironmentFile( sourceFile );
+        local = Map.of( "SERVICE_1_URL", "local" );
+        profile = Map.of( "SERVICE_2_URL", "profile" );
+        overrides = Map.of( "SERVICE_3_URL", "task" );
+        overlay = EnvOverlay.EMPTY.with( base ).with( local ).with( profile );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        Files.deleteIfExists( sourceFile.toPath() );
+    }
+
+    @Benchmark
+    public void copyPerTask( final Blackhole blackhole ) {
+        for ( int index = 0; index < tasks; index++ ) {
+            final Map<String, String> merged = new LinkedHashMap<>( base );
+            merged.putAll( local );
+            merged.putAll( profile );
+            merged.putAll( overrides );
+            blackhole.consume( merged );
+        }
+    }
+
+    @Benchmark
+    public void overlayPerTask( final Blackhole blackhole ) {
+        for ( int index = 0; index < tasks; index++ ) {
+            blackhole.consume( overlay.with( overrides ) );
+        }
+    }
+}
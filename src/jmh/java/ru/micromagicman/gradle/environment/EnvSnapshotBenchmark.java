@@ -0,0 +1,105 @@
+package ru.micromagicman.gradle.environment;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained by parsed environments of a monorepo, where every project declares the same keys
+ * and most of the values are equal: a {@link java.util.LinkedHashMap} per project versus
+ * {@link EnvSnapshot snapshots} deduplicated by a shared {@link EnvStringPool}.
+ * <p>
+ * The retained heap is reported as the {@code retainedBytes} secondary result.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( value = 1, jvmArgs = { "-Xms1g", "-Xmx1g" } )
+public class EnvSnapshotBenchmark {
+
+    @Param( { "100", "500" } )
+    int projects;
+
+    @Param( { "200" } )
+    int entries;
+
+    private List<byte[]> contents;
+
+    /**
+     * Heap retained by the environments built in an iteration.
+     */
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.EVENTS )
+    public static class RetainedHeap {
+
+        public long retainedBytes;
+
+        @Setup( Level.Iteration )
+        public void reset() {
+            retainedBytes = 0;
+        }
+    }
+
+    @Setup( Level.Trial )
+    public void setUp() {
+        contents = new ArrayList<>( projects );
+        for ( int project = 0; project < projects; project++ ) {
+            final StringBuilder content = new StringBuilder( entries * 64 );
+            for ( int index = 0; index < entries; index++ ) {
+                // every tenth value is project specific, the rest are shared by the whole monorepo
+                final String host = 0 == index % 10 ? "host-" + project : "host-" + index;
+                content.append( "SERVICE_" ).append( index ).append( "_URL=jdbc:postgresql://" )
+                        .append( host ).append( ":5432/app?sslmode=require\n" );
+            }
+            contents.add( content.toString().getBytes( EnvFileParser.CHARSET ) );
+        }
+    }
+
+    @Benchmark
+    public Object linkedHashMaps( final RetainedHeap heap ) {
+        final long before = usedHeap();
+        final List<Map<String, String>> environments = new ArrayList<>( projects );
+        for ( final byte[] content : contents ) {
+            environments.add( EnvFile.parseEnvironment( content ) );
+        }
+        heap.retainedBytes += usedHeap() - before;
+        return environments;
+    }
+
+    @Benchmark
+    public Object snapshots( final RetainedHeap heap ) {
+        final long before = usedHeap();
+        final EnvStringPool pool = new EnvStringPool();
+        final List<Map<String, String>> environments = new ArrayList<>( projects );
+        for ( final byte[] content : contents ) {
+            environments.add( EnvSnapshot.of( EnvFile.parseEnvironment( content ), pool ) );
+        }
+        heap.retainedBytes += usedHeap() - before;
+        return environments;
+    }
+
+    private static long usedHeap() {
+        for ( int attempt = 0; attempt < 3; attempt++ ) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,46 @@
+package ru.micromagicman.gradle.environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared fixtures of environment benchmarks.
+ */
+final class EnvironmentBenchmarks {
+
+    private EnvironmentBenchmarks() {
+    }
+
+    /**
+     * Creates a temporary .env file with the given number of entries.
+     * Every tenth entry is a commented out line and every fifth key is a sensitive one.
+     */
+    static File createEnvFile( final int entries ) throws IOException {
+        final File file = Files.createTempFile( "benchmark", ".env" ).toFile();
+        try ( final Writer writer = Files.newBufferedWriter( file.toPath(), EnvFileParser.CHARSET ) ) {
+            for ( int index = 0; index < entries; index++ ) {
+                if ( 0 == index % 10 ) {
+                    writer.write( "# variable group " + index + "\n" );
+                }
+                final String key = 0 == index % 5 ? "SERVICE_" + index + "_PASSWORD" : "SERVICE_" + index + "_URL";
+                writer.write( key + "=jdbc:postgresql://host-" + index + ":5432/app?sslmode=require\n" );
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Creates the given number of sensitive key patterns, always including the default "password" and "token".
+     */
+    static List<String> sensitivePatterns( final int count ) {
+        final List<String> patterns = new ArrayList<>( List.of( "password", "token" ) );
+        for ( int index = patterns.size(); index < count; index++ ) {
+            patterns.add( "secret_" + index );
+        }
+        return patterns;
+    }
+}
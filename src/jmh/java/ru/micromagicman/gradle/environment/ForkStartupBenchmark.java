@@ -0,0 +1,79 @@
+package ru.micromagicman.gradle.environment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup of a forked JVM on a CI host exporting thousands of variables: inheriting the whole environment
+ * versus the {@link MinimalEnvironment minimal environment} with the default allowlist.
+ * Both forks receive the same parsed environment.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ForkStartupBenchmark {
+
+    @Param( { "5000" } )
+    int inheritedVariables;
+
+    @Param( { "100" } )
+    int entries;
+
+    private String java;
+    private Map<String, String> inherited;
+    private Map<String, String> variables;
+    private MinimalEnvironment minimalEnvironment;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        java = new File( System.getProperty( "java.home" ), "bin/java" ).getPath();
+        inherited = new LinkedHashMap<>( System.getenv() );
+        for ( int index = 0; index < inheritedVariables; index++ ) {
+            inherited.put( "CI_VARIABLE_" + index, "value of a variable exported by the CI agent " + index );
+        }
+        final File sourceFile = EnvironmentBenchmarks.createEnvFile( entries );
+        variables = EnvFile.parseEnvironmentFile( sourceFile );
+        sourceFile.delete();
+        minimalEnvironment = MinimalEnvironment.compile( MinimalEnvironment.DEFAULT_INHERITED_VARIABLES );
+    }
+
+    @Benchmark
+    public int inheritedEnvironment() throws IOException, InterruptedException {
+        final Map<String, Object> environment = new LinkedHashMap<>( inherited );
+        environment.putAll( variables );
+        return fork( environment );
+    }
+
+    @Benchmark
+    public int minimalEnvironment() throws IOException, InterruptedException {
+        return fork( minimalEnvironment.of( inherited, inherited, variables ) );
+    }
+
+    private int fork( final Map<String, Object> environment ) throws IOException, InterruptedException {
+        final ProcessBuilder builder = new ProcessBuilder( java, "-Xshare:auto", "-version" )
+                .redirectOutput( ProcessBuilder.Redirect.DISCARD )
+                .redirectError( ProcessBuilder.Redirect.DISCARD );
+        builder.environment().clear();
+        environment.forEach( ( name, value ) -> builder.environment().put( name, String.valueOf( value ) ) );
+        return builder.start().waitFor();
+    }
+}
@@ -0,0 +1,90 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.process.ProcessForkOptions;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal in-memory {@link ProcessForkOptions} used instead of a real forking task in benchmarks.
+ */
+final class RecordingProcessForkOptions implements ProcessForkOptions {
+
+    private final Map<String, Object> environment = new HashMap<>();
+    private String executable;
+    private File workingDir;
+
+    @Override
+    public String getExecutable() {
+        return executable;
+    }
+
+    @Override
+    public void setExecutable( final String executable ) {
+        this.executable = executable;
+    }
+
+    @Override
+    public void setExecutable( final Object executable ) {
+        this.executable = String.valueOf( executable );
+    }
+
+    @Override
+    public ProcessForkOptions executable( final Object executable ) {
+        setExecutable( executable );
+        return this;
+    }
+
+    @Override
+    public File getWorkingDir() {
+        return workingDir;
+    }
+
+    @Override
+    public void setWorkingDir( final File dir ) {
+        this.workingDir = dir;
+    }
+
+    @Override
+    public void setWorkingDir( final Object dir ) {
+        this.workingDir = new File( String.valueOf( dir ) );
+    }
+
+    @Override
+    public ProcessForkOptions workingDir( final Object dir ) {
+        setWorkingDir( dir );
+        return this;
+    }
+
+    @Override
+    public Map<String, Object> getEnvironment() {
+        return environment;
+    }
+
+    @Override
+    public void setEnvironment( final Map<String, ?> environmentVariables ) {
+        environment.clear();
+        environment.putAll( environmentVariables );
+    }
+
+    @Override
+    public ProcessForkOptions environment( final Map<String, ?> environmentVariables ) {
+        environment.putAll( environmentVariables );
+        return this;
+    }
+
+    @Override
+    public ProcessForkOptions environment( final String name, final Object value ) {
+        environment.put( name, value );
+        return this;
+    }
+
+    @Override
+    public ProcessForkOptions copyTo( final ProcessForkOptions options ) {
+        options.setExecutable( executable );
+        options.setWorkingDir( workingDir );
+        options.setEnvironment( environment );
+        return this;
+    }
+}
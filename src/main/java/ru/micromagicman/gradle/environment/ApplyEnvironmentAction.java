@@ -0,0 +1,115 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.provider.Provider;
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+import org.gradle.process.ProcessForkOptions;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Task action applying the environment to a {@link ProcessForkOptions} task right before the task is executed,
+ * so tasks which are configured but do not run in the build never resolve or receive the environment.
+ * <p>
+ * All variables are applied with a single {@link ProcessForkOptions#environment(Map)} call. Variables the build script
+ * has set on the task itself, i.e. {@link #taskVariables(Map, Map) not inherited} from the environment of the build,
+ * take precedence and are not overwritten. In the
+ * {@link MinimalEnvironment minimal-environment} mode the environment of the task is replaced with
+ * {@link ProcessForkOptions#setEnvironment(Map)}, keeping only allowlisted inherited variables and variables
+ * set by the build script. The allowlist is compiled once per project, the action receives it absent
+ * when the mode is disabled.
+ * If any value references {@code ${fork.index}}, the task leases a {@link ForkSlotService slot}, whose index
+ * is substituted. {@link EnvFileReference File-reference values} are replaced with contents of the referenced files
+ * read through the {@link EnvFileCacheService}.
+ * The action holds only providers, so it is stored in the configuration cache together with the task.
+ */
+final class ApplyEnvironmentAction implements Action<Task> {
+
+    private final String projectPath;
+    private final File projectDirectory;
+    private final Provider<Map<String, String>> environment;
+    private final Provider<EnvFileCacheService> cache;
+    private final Provider<EnvironmentMetricsService> metrics;
+    private final Provider<ForkSlotService> forkSlots;
+    private final Provider<MinimalEnvironment> minimalEnvironment;
+
+    ApplyEnvironmentAction(
+            final String projectPath,
+            final File projectDirectory,
+            final Provider<Map<String, String>> environment,
+            final Provider<EnvFileCacheService> cache,
+            final Provider<EnvironmentMetricsService> metrics,
+            final Provider<ForkSlotService> forkSlots,
+            final Provider<MinimalEnvironment> minimalEnvironment ) {
+        this.projectPath = projectPath;
+        this.projectDirectory = projectDirectory;
+        this.environment = environment;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.forkSlots = forkSlots;
+        this.minimalEnvironment = minimalEnvironment;
+    }
+
+    @Override
+    public void execute( final Task task ) {
+        final long start = System.nanoTime();
+        final Map<String, String> resolved = environment.get();
+        final Map<String, String> indexed = EnvInterpolator.referencesForkIndex( resolved )
+                ? EnvInterpolator.withForkIndex( resolved, forkSlots.get().lease( task.getPath() ) )
+                : resolved;
+        final Map<String, String> variables = EnvFileReference.resolve(
+                indexed,
+                projectDirectory,
+                file -> cache.get().loadReference( file )
+        );
+        final ProcessForkOptions processForkTask = (ProcessForkOptions) task;
+        final MinimalEnvironment minimal = minimalEnvironment.getOrNull();
+        if ( null != minimal ) {
+            processForkTask.setEnvironment( minimal.of( processForkTask.getEnvironment(), System.getenv(), variables ) );
+        } else {
+            processForkTask.environment( without(
+                    variables,
+                    taskVariables( processForkTask.getEnvironment(), System.getenv() ).keySet()
+            ) );
+        }
+        metrics.get().record(
+                projectPath,
+                task.getPath(),
+                EnvironmentMetricsService.Operation.APPLY,
+                EnvironmentMetricsService.UNKNOWN_BYTES,
+                variables.size(),
+                start
+        );
+    }
+
+    /**
+     * Returns variables set on the task by the build script: variables of the task environment which are absent
+     * from the inherited environment of the build or have a different value.
+     */
+    @NonNull
+    static Map<String, Object> taskVariables( final Map<String, ?> environment, final Map<String, String> inherited ) {
+        final Map<String, Object> variables = new LinkedHashMap<>();
+        environment.forEach( ( name, value ) -> {
+            if ( !Objects.equals( inherited.get( name ), Objects.toString( value, null ) ) ) {
+                variables.put( name, value );
+            }
+        } );
+        return variables;
+    }
+
+    @NonNull
+    private static Map<String, String> without( final Map<String, String> variables, final Set<String> names ) {
+        if ( names.isEmpty() || Collections.disjoint( variables.keySet(), names ) ) {
+            return variables;
+        }
+        final Map<String, String> result = new LinkedHashMap<>( variables );
+        result.keySet().removeAll( names );
+        return result;
+    }
+}
@@ -0,0 +1,257 @@
+package ru.micromagicman.gradle.environment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of parsed environment files living as long as the plugin class loader, which Gradle reuses
+ * between builds of the same daemon while the build classpath does not change.
+ * <p>
+ * Every cache hit is validated against the size and modification time of the file, so a warm build only reads
+ * attributes of cached files. During a build, snapshots are also invalidated by a {@link WatchService} watching
+ * directories of cached files, which reports changes keeping both attributes. Files which cannot be watched
+ * (symbolic links, too many watched directories or a polling watch service, which reports changes with a delay)
+ * are validated by attributes only. Absent files are cached too, so creating a file invalidates them.
+ * <p>
+ * The watch service is opened by the first load of a build and {@link #closeWatchService() closed} when the build
+ * finishes, so it does not outlive the plugin class loader the cache belongs to.
+ * <p>
+ * Snapshots are {@link EnvSnapshot compact} and deduplicated by a pool, which is dropped together with the snapshots
+ * once either of them grows too large.
+ */
+@Slf4j
+final class DaemonEnvFileCache {
+
+    /**
+     * Cache shared by all builds of the daemon.
+     */
+    static final DaemonEnvFileCache INSTANCE = new DaemonEnvFileCache( DaemonEnvFileCache::createWatchService );
+
+    /**
+     * Maximum number of directories watched at once, further directories are validated by attributes.
+     */
+    static final int MAX_WATCHED_DIRECTORIES = 256;
+
+    /**
+     * Maximum number of cached snapshots, the cache is cleared when it is exceeded.
+     */
+    static final int MAX_SNAPSHOTS = 4096;
+
+    /**
+     * Maximum number of pooled strings, the cache is cleared when it is exceeded.
+     */
+    static final int MAX_POOLED_STRINGS = 1 << 18;
+
+    private static final long ABSENT = -1;
+
+    private final Map<Path, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+    private final EnvStringPool pool = new EnvStringPool();
+    private final Supplier<WatchService> watchServices;
+    private WatchService watchService;
+    private boolean watchServiceOpened;
+
+    /**
+     * Creates a cache opening watch services with the given factory, which returns {@code null}
+     * if file watching is not available.
+     */
+    DaemonEnvFileCache( final Supplier<WatchService> watchServices ) {
+        this.watchServices = watchServices;
+    }
+
+    /**
+     * Returns an unmodifiable map of variables of the given file if its snapshot is cached and up-to-date
+     * or {@code null} otherwise.
+     */
+    Map<String, String> get( final Path file ) {
+        processEvents();
+        final Path path = normalize( file );
+        final Snapshot snapshot = snapshots.get( path );
+        if ( null == snapshot ) {
+            return null;
+        }
+        if ( snapshot.matches( attributes( path ) ) ) {
+            return snapshot.variables();
+        }
+        snapshots.remove( path, snapshot );
+        return null;
+    }
+
+    /**
+     * Parses the given file, which may not exist, and caches its snapshot.
+     *
+     * @return an unmodifiable map of variables
+     */
+    @NonNull
+    Map<String, String> load( final Path file ) {
+        final Path path = normalize( file );
+        // the directory is watched before reading, so a change made after the snapshot is stored is reported
+        if ( !Files.isSymbolicLink( path ) ) {
+            watch( path.getParent() );
+        }
+        final BasicFileAttributes attributes = attributes( path );
+        if ( snapshots.size() >= MAX_SNAPSHOTS || pool.size() >= MAX_POOLED_STRINGS ) {
+            clear();
+        }
+        final Map<String, String> variables = null != attributes
+                ? EnvSnapshot.of( EnvFile.parseEnvironmentFile( path.toFile() ), pool )
+                : Collections.emptyMap();
+        final Snapshot snapshot = Snapshot.of( attributes, variables );
+        snapshots.put( path, snapshot );
+        // the event of a change made while parsing may be drained by another thread before the snapshot is stored,
+        // so the snapshot is dropped unless the file is still the one it was parsed from
+        if ( !snapshot.matches( attributes( path ) ) ) {
+            snapshots.remove( path, snapshot );
+        }
+        return variables;
+    }
+
+    /**
+     * Drops all cached snapshots.
+     */
+    void clear() {
+        snapshots.clear();
+        pool.clear();
+    }
+
+    /**
+     * Applies pending changes and closes the watch service, e.g. when a build finishes. Snapshots are kept
+     * and validated by attributes, the next {@link #load(Path) load} opens a new watch service.
+     */
+    synchronized void closeWatchService() {
+        processEvents();
+        watchedDirectories.clear();
+        watchServiceOpened = false;
+        if ( null == watchService ) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch ( IOException exception ) {
+            log.debug( "Cannot close the watch service", exception );
+        }
+        watchService = null;
+    }
+
+    private synchronized void watch( final Path directory ) {
+        if ( !watchServiceOpened ) {
+            watchService = watchServices.get();
+            watchServiceOpened = true;
+        }
+        if ( null == watchService || null == directory ) {
+            return;
+        }
+        final WatchKey existing = watchedDirectories.get( directory );
+        if ( null != existing && existing.isValid() || watchedDirectories.size() >= MAX_WATCHED_DIRECTORIES ) {
+            return;
+        }
+        try {
+            watchedDirectories.put( directory, directory.register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE
+            ) );
+        } catch ( IOException | ClosedWatchServiceException | UnsupportedOperationException exception ) {
+            log.debug( "Cannot watch {}, falling back to file attributes", directory, exception );
+        }
+    }
+
+    /**
+     * Invalidates snapshots of all files changed since the previous call.
+     */
+    private synchronized void processEvents() {
+        if ( null == watchService ) {
+            return;
+        }
+        WatchKey key;
+        while ( null != ( key = pollQuietly() ) ) {
+            final Path directory = (Path) key.watchable();
+            for ( final WatchEvent<?> event : key.pollEvents() ) {
+                if ( event.context() instanceof Path name ) {
+                    snapshots.remove( directory.resolve( name ) );
+                } else {
+                    invalidateDirectory( directory );
+                }
+            }
+            if ( !key.reset() ) {
+                watchedDirectories.remove( directory, key );
+                invalidateDirectory( directory );
+            }
+        }
+    }
+
+    private WatchKey pollQuietly() {
+        try {
+            return watchService.poll();
+        } catch ( ClosedWatchServiceException exception ) {
+            return null;
+        }
+    }
+
+    private void invalidateDirectory( final Path directory ) {
+        snapshots.keySet().removeIf( path -> directory.equals( path.getParent() ) );
+    }
+
+    private static BasicFileAttributes attributes( final Path path ) {
+        try {
+            return Files.readAttributes( path, BasicFileAttributes.class );
+        } catch ( IOException exception ) {
+            return null;
+        }
+    }
+
+    @NonNull
+    private static Path normalize( final Path file ) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Creates a native watch service or returns {@code null} if only a polling one is available.
+     */
+    private static WatchService createWatchService() {
+        try {
+            final WatchService watchService = FileSystems.getDefault().newWatchService();
+            if ( watchService.getClass().getSimpleName().startsWith( "Polling" ) ) {
+                watchService.close();
+                return null;
+            }
+            return watchService;
+        } catch ( IOException | UnsupportedOperationException exception ) {
+            log.debug( "File watching is not available, falling back to file attributes", exception );
+            return null;
+        }
+    }
+
+    private record Snapshot( long size, FileTime lastModified, Map<String, String> variables ) {
+
+        @NonNull
+        static Snapshot of( final BasicFileAttributes attributes, final Map<String, String> variables ) {
+            return null != attributes
+                    ? new Snapshot( attributes.size(), attributes.lastModifiedTime(), variables )
+                    : new Snapshot( ABSENT, null, variables );
+        }
+
+        boolean matches( final BasicFileAttributes attributes ) {
+            return null == attributes
+                    ? ABSENT == size
+                    : attributes.size() == size && attributes.lastModifiedTime().equals( lastModified );
+        }
+    }
+}
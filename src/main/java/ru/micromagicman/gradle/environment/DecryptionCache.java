@@ -0,0 +1,82 @@
+package ru.micromagicman.gradle.environment;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Cache of decrypted environment files living as long as the plugin class loader, so repeated builds
+ * of the same daemon and tasks do not decrypt an unchanged file again. Unless the
+ * {@link EnvFileCacheService#DAEMON_CACHE_PROPERTY daemon cache} is enabled, plaintexts are kept only for a build
+ * and {@link EnvFileCacheService#close() cleared} when it finishes.
+ * <p>
+ * Plaintexts are kept off-heap in direct buffers keyed by the {@link EnvFileCipher#fingerprint fingerprint}
+ * of the key and the encrypted content. Buffers are zeroed when they are evicted or the cache is cleared.
+ */
+final class DecryptionCache {
+
+    /**
+     * Cache shared by all builds of the daemon.
+     */
+    static final DecryptionCache INSTANCE = new DecryptionCache();
+
+    /**
+     * Maximum number of cached plaintexts, the least recently used one is evicted when it is exceeded.
+     */
+    static final int MAX_ENTRIES = 64;
+
+    private final Map<String, ByteBuffer> plaintexts = new LinkedHashMap<>( 16, 0.75f, true );
+
+    /**
+     * Reads the plaintext of the given encrypted content, decrypting it only if it is not cached yet.
+     * The reader receives a read-only view of the plaintext, which must not escape it.
+     *
+     * @throws GeneralSecurityException if the content cannot be decrypted with the key
+     */
+    synchronized <T> T read(
+            final ByteBuffer encrypted,
+            final SecretKey key,
+            final Function<ByteBuffer, T> reader ) throws GeneralSecurityException {
+        final String fingerprint = EnvFileCipher.fingerprint( key, encrypted );
+        ByteBuffer plaintext = plaintexts.get( fingerprint );
+        if ( null == plaintext ) {
+            plaintext = EnvFileCipher.decrypt( encrypted, key );
+            plaintexts.put( fingerprint, plaintext );
+            evictExceeding();
+        }
+        return reader.apply( plaintext.asReadOnlyBuffer() );
+    }
+
+    /**
+     * Returns the number of cached plaintexts.
+     */
+    synchronized int size() {
+        return plaintexts.size();
+    }
+
+    /**
+     * Zeroes and drops all cached plaintexts.
+     */
+    synchronized void clear() {
+        plaintexts.values().forEach( DecryptionCache::zero );
+        plaintexts.clear();
+    }
+
+    private void evictExceeding() {
+        final Iterator<ByteBuffer> iterator = plaintexts.values().iterator();
+        while ( plaintexts.size() > MAX_ENTRIES && iterator.hasNext() ) {
+            zero( iterator.next() );
+            iterator.remove();
+        }
+    }
+
+    private static void zero( final ByteBuffer buffer ) {
+        for ( int index = 0; index < buffer.capacity(); index++ ) {
+            buffer.put( index, (byte) 0 );
+        }
+    }
+}
@@ -1,124 +1,110 @@
 package ru.micromagicman.gradle.environment;
 
-import lombok.extern.slf4j.Slf4j;
 import org.gradle.api.Project;
 import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
 import org.gradle.process.ProcessForkOptions;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.util.Collections;
+import java.nio.ByteBuffer;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
-import java.util.function.Predicate;
 
 /**
- * Represents an environment configuration file (.env) containing key-value pairs.
+ * Immutable snapshot of an environment configuration file (.env) containing key-value pairs.
  * <p>The file format follows standard .env conventions with one variable per line.
+ * <p>A snapshot is thread-safe and may be shared between projects configured in parallel. Files are changed
+ * only through an {@link EnvFileBuilder}, which is confined to a single task action.
  */
-@Slf4j
-class EnvFile extends File {
+final class EnvFile {
 
-    private static final String DEFAULT_FILE_NAME = ".env";
-    private static final String EMPTY_VALUE = "";
-    private final Map<String, String> variables;
+    static final String DEFAULT_FILE_NAME = ".env";
+    private final File file;
+    private final EnvSnapshot variables;
 
     /**
-     * Creates a new environment file instance.
+     * Creates a snapshot of the given file from already parsed variables.
      */
-    EnvFile( final File parent, final String children ) {
-        super( parent, children );
-        this.variables = parseEnvironmentFile( this );
+    EnvFile( final File file, final Map<String, String> variables ) {
+        this.file = file;
+        this.variables = EnvSnapshot.copyOf( variables );
     }
 
     /**
-     * Merges this environment file with another, applying a key-filter predicate.
+     * Reads a snapshot of the given file, which may not exist.
+     *
+     * @throws RuntimeException if the file cannot be read
      */
-    void mergeWith( final EnvFile other, final Predicate<String> keyPredicate ) {
-        for ( final Map.Entry<String, String> entry : other.variables.entrySet() ) {
-            final String key = entry.getKey();
-            final String value = keyPredicate.test( key ) ? entry.getValue() : null;
-            put( key, value );
-        }
+    @NonNull
+    static EnvFile read( final File parent, final String children ) {
+        final File file = new File( parent, children );
+        return new EnvFile( file, parseEnvironmentFile( file ) );
     }
 
     /**
-     * Adds or updates an environment variable.
+     * Returns the file of the snapshot.
      */
-    void put( final String name, final Object value ) {
-        variables.put(
-                Objects.requireNonNull( name, "Key cannot be null" ),
-                null != value ? value.toString() : EMPTY_VALUE
-        );
+    @NonNull
+    File file() {
+        return file;
     }
 
     /**
-     * Returns an unmodifiable view of all environment variables.
+     * Returns an unmodifiable map of all environment variables.
      */
     @NonNull
     Map<String, String> all() {
-        return Collections.unmodifiableMap( variables );
+        return variables;
     }
 
     /**
-     * Applies all environment variables to a Gradle task.
+     * Applies all environment variables to a Gradle task, resolving {@code ${VAR}} references.
+     *
+     * @see EnvInterpolator
      */
     void applyForTask( final ProcessForkOptions processForkTask ) {
-        variables.forEach( processForkTask::environment );
+        EnvOverlay.EMPTY.with( variables ).applyForTask( processForkTask );
     }
 
     /**
-     * Writes all environment variables to disk in KEY=value format.
+     * Reads a snapshot of the default environment file of the given project.
      */
-    void flush() {
-        try ( final OutputStream outputStream = new FileOutputStream( this ) ) {
-            for ( final Map.Entry<String, String> variable : variables.entrySet() ) {
-                outputStream.write( ( variable.getKey() + "=" + variable.getValue() + "\n" ).getBytes() );
-            }
-        } catch ( IOException exception ) {
-            throw new RuntimeException( "Error flushing environment file on disk", exception );
-        }
+    @NonNull
+    static EnvFile forProject( final Project project ) {
+        return read( project.getProjectDir(), DEFAULT_FILE_NAME );
     }
 
     /**
-     * Creates an EnvFile instance for the given project's default location.
+     * Creates an EnvFile instance for the given file,
+     * reusing a snapshot from the build-scoped cache if the file was already parsed.
      */
     @NonNull
-    static EnvFile forProject( final Project project ) {
-        return new EnvFile( project.getProjectDir(), DEFAULT_FILE_NAME );
+    static EnvFile load( final File file, final EnvFileCacheService cache ) {
+        return new EnvFile( file, cache.load( file ) );
     }
 
     /**
      * Parses an environment file into a map of key-value pairs.
      * <p>
-     * Each non-empty line should contain KEY=value format.
-     * Blank lines and lines without '=' are ignored.
+     * See {@link EnvFileParser} for the supported syntax.
      */
     @NonNull
     static Map<String, String> parseEnvironmentFile( final File file ) {
-        final Map<String, String> variables = new LinkedHashMap<>();
         if ( !file.exists() ) {
-            return variables;
+            return new LinkedHashMap<>();
         }
-        try ( final BufferedReader reader = new BufferedReader( new FileReader( file ) ) ) {
-            String line = reader.readLine();
-            while ( null != line ) {
-                if ( !line.isBlank() ) {
-                    final String[] split = line.split( "=" );
-                    if ( split.length >= 2 ) {
-                        variables.put( split[0].trim(), split[1].trim() );
-                    }
-                }
-                line = reader.readLine();
-            }
-            return variables;
+        try {
+            return EnvFileParser.parse( file.toPath() );
         } catch ( IOException exception ) {
             throw new RuntimeException( "Error parsing environment file", exception );
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses already read environment file content into a map of key-value pairs.
+     */
+    @NonNull
+    static Map<String, String> parseEnvironment( final byte[] content ) {
+        return EnvFileParser.parse( ByteBuffer.wrap( content ) );
+    }
+}
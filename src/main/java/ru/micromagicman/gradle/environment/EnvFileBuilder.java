@@ -0,0 +1,238 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Mutable content of an environment file being written, e.g. by {@link GenerateExampleEnvFileTask}.
+ * <p>A builder opened from disk keeps the {@link EnvFileLayout layout} of the file, so {@link #flush()} rewrites only
+ * changed declarations and preserves comments, blank lines and formatting of the rest of the file.
+ * <p>A builder is not thread-safe and must be confined to a single task action, while {@link #build() snapshots}
+ * it creates are immutable.
+ */
+final class EnvFileBuilder {
+
+    private static final String EMPTY_VALUE = "";
+    private final File file;
+    private final EnvFileParser.Variables variables = new EnvFileParser.Variables();
+    private EnvFileLayout layout;
+
+    private EnvFileBuilder( final File file, final EnvFileLayout layout ) {
+        this.file = file;
+        this.layout = layout;
+        if ( null != layout ) {
+            layout.variables().forEach( ( key, value ) -> variables.put(
+                    key, value, EnvSnapshot.isLiteral( layout.variables(), key )
+            ) );
+        }
+    }
+
+    /**
+     * Creates an empty builder of the given file, which replaces the content of the file on {@link #flush()}.
+     */
+    @NonNull
+    static EnvFileBuilder create( final File file ) {
+        return new EnvFileBuilder( file, null );
+    }
+
+    /**
+     * Creates a builder of the given file filled with its current variables and layout.
+     *
+     * @throws RuntimeException if the file cannot be read
+     */
+    @NonNull
+    static EnvFileBuilder open( final File parent, final String children ) {
+        final File file = new File( parent, children );
+        return new EnvFileBuilder( file, readLayout( file ) );
+    }
+
+    /**
+     * Merges variables of the given environment file, applying a key-filter predicate.
+     * Values of keys not matching the predicate are replaced with empty ones, literal values stay literal.
+     */
+    @NonNull
+    EnvFileBuilder mergeWith( final EnvFile other, final Predicate<String> keyPredicate ) {
+        final Map<String, String> source = other.all();
+        source.forEach( ( key, value ) -> {
+            if ( keyPredicate.test( key ) ) {
+                variables.put( key, value, EnvSnapshot.isLiteral( source, key ) );
+            } else {
+                put( key, null );
+            }
+        } );
+        return this;
+    }
+
+    /**
+     * Adds or updates an environment variable.
+     */
+    @NonNull
+    EnvFileBuilder put( final String name, final Object value ) {
+        variables.put(
+                Objects.requireNonNull( name, "Key cannot be null" ),
+                null != value ? value.toString() : EMPTY_VALUE
+        );
+        return this;
+    }
+
+    /**
+     * Removes variables whose names do not match the given predicate, together with their declaration lines.
+     */
+    @NonNull
+    EnvFileBuilder retainIf( final Predicate<String> keyPredicate ) {
+        variables.keySet().removeIf( keyPredicate.negate() );
+        return this;
+    }
+
+    /**
+     * Returns {@code true} if the builder contains a variable with the given name.
+     */
+    boolean contains( final String name ) {
+        return variables.containsKey( name );
+    }
+
+    /**
+     * Returns the number of variables.
+     */
+    int size() {
+        return variables.size();
+    }
+
+    /**
+     * Creates an immutable snapshot of the current variables.
+     */
+    @NonNull
+    EnvFile build() {
+        return new EnvFile( file, variables );
+    }
+
+    /**
+     * Writes all environment variables to disk in KEY=value format.
+     * <p>
+     * Declarations changed since the file was read are patched in place, declarations of removed variables
+     * are dropped and new variables are appended to the end of the file. The file is not touched if its content is already up-to-date,
+     * otherwise it is replaced atomically with a temporary file written next to it.
+     */
+    void flush() {
+        final byte[] content = render();
+        final Path path = file.toPath();
+        try {
+            if ( hasContent( path, content ) ) {
+                return;
+            }
+            writeAtomically( path, content );
+            layout = EnvFileParser.parseLayout( content );
+        } catch ( IOException exception ) {
+            throw new RuntimeException( "Error flushing environment file on disk", exception );
+        }
+    }
+
+    @NonNull
+    private byte[] render() {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(
+                null != layout ? layout.content().length + 64 : variables.size() * 32
+        );
+        final Set<String> written = new HashSet<>();
+        if ( null != layout ) {
+            final byte[] original = layout.content();
+            final List<Map.Entry<String, EnvFileLayout.Line>> lines = new ArrayList<>( layout.lines().entrySet() );
+            lines.sort( Comparator.comparingInt( line -> line.getValue().start() ) );
+            int cursor = 0;
+            for ( final Map.Entry<String, EnvFileLayout.Line> line : lines ) {
+                final String key = line.getKey();
+                final String value = variables.get( key );
+                written.add( key );
+                if ( null == value ) {
+                    output.write( original, cursor, line.getValue().start() - cursor );
+                    cursor = line.getValue().end();
+                    continue;
+                }
+                final boolean literal = variables.isLiteral( key );
+                if ( Objects.equals( value, layout.variables().get( key ) )
+                        && literal == EnvSnapshot.isLiteral( layout.variables(), key ) ) {
+                    continue;
+                }
+                output.write( original, cursor, line.getValue().start() - cursor );
+                writeDeclaration( output, key, value, literal );
+                cursor = line.getValue().end();
+            }
+            output.write( original, cursor, original.length - cursor );
+            final boolean endsWithoutLineBreak = cursor < original.length && '\n' != original[original.length - 1];
+            if ( endsWithoutLineBreak && written.size() < variables.size() ) {
+                output.write( '\n' );
+            }
+        }
+        for ( final Map.Entry<String, String> variable : variables.entrySet() ) {
+            if ( !written.contains( variable.getKey() ) ) {
+                final String key = variable.getKey();
+                writeDeclaration( output, key, variable.getValue(), variables.isLiteral( key ) );
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private static void writeDeclaration(
+            final ByteArrayOutputStream output,
+            final String key,
+            final String value,
+            final boolean literal ) {
+        final String line = key + "=" + EnvFileParser.format( value, literal ) + "\n";
+        output.writeBytes( line.getBytes( EnvFileParser.CHARSET ) );
+    }
+
+    private static boolean hasContent( final Path path, final byte[] content ) throws IOException {
+        return Files.isRegularFile( path )
+                && Files.size( path ) == content.length
+                && Arrays.equals( Files.readAllBytes( path ), content );
+    }
+
+    private static void writeAtomically( final Path path, final byte[] content ) throws IOException {
+        final Path target = path.toAbsolutePath();
+        final Path temporary = target.resolveSibling( "." + target.getFileName() + "." + UUID.randomUUID() + ".tmp" );
+        try {
+            try ( final OutputStream outputStream = new BufferedOutputStream( Files.newOutputStream( temporary ) ) ) {
+                outputStream.write( content );
+            }
+            if ( Files.exists( target ) && Files.getFileStore( target ).supportsFileAttributeView( "posix" ) ) {
+                Files.setPosixFilePermissions( temporary, Files.getPosixFilePermissions( target ) );
+            }
+            try {
+                Files.move( temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+            } catch ( AtomicMoveNotSupportedException exception ) {
+                Files.move( temporary, target, StandardCopyOption.REPLACE_EXISTING );
+            }
+        } finally {
+            Files.deleteIfExists( temporary );
+        }
+    }
+
+    private static EnvFileLayout readLayout( final File file ) {
+        if ( !file.exists() ) {
+            return null;
+        }
+        try {
+            return EnvFileParser.parseLayout( Files.readAllBytes( file.toPath() ) );
+        } catch ( IOException exception ) {
+            throw new RuntimeException( "Error parsing environment file", exception );
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package ru.micromagicman.gradle.environment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Build-scoped cache of parsed environment files shared between all projects and tasks of a build.
+ * <p>
+ * Snapshots are keyed by the canonical path of the file and validated against its size and
+ * modification time, so a shared or parent .env file is read and parsed once per build.
+ * Parsed files are kept as {@link EnvSnapshot compact snapshots} deduplicated by a build-scoped {@link EnvStringPool},
+ * so projects declaring the same variables share their keys and equal values.
+ * <p>
+ * Contents of files referenced by {@link EnvFileReference file-reference values} are cached by their SHA-256 hash,
+ * so a file referenced by many tasks is read once per build and equal files share a single string.
+ * <p>
+ * When the {@link Parameters#getDaemonCache() daemon cache} is enabled, files loaded by path are kept
+ * in a {@link DaemonEnvFileCache} shared by all builds of the Gradle daemon.
+ */
+@Slf4j
+public abstract class EnvFileCacheService implements BuildService<EnvFileCacheService.Parameters>, AutoCloseable {
+
+    /**
+     * Name of the shared build service registration.
+     */
+    public static final String NAME = "environmentFileCache";
+
+    /**
+     * Name of the Gradle property enabling the daemon cache, e.g. {@code environment.daemonCache=true}
+     * in {@code gradle.properties}.
+     */
+    public static final String DAEMON_CACHE_PROPERTY = "environment.daemonCache";
+
+    /**
+     * Parameters of the service.
+     */
+    public interface Parameters extends BuildServiceParameters {
+
+        /**
+         * Whether parsed files are kept between builds of the same Gradle daemon.
+         */
+        Property<Boolean> getDaemonCache();
+    }
+
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<String, SchemaSnapshot> schemas = new ConcurrentHashMap<>();
+    private final EnvStringPool pool = new EnvStringPool();
+    private final Map<String, ReferenceSnapshot> references = new ConcurrentHashMap<>();
+    private final Map<String, String> referenceContents = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Registers the service for the build unless it is already registered by another project or by the settings.
+     */
+    @NonNull
+    static Provider<EnvFileCacheService> register( final Gradle gradle, final ProviderFactory providers ) {
+        return gradle.getSharedServices().registerIfAbsent(
+                NAME,
+                EnvFileCacheService.class,
+                spec -> spec.getParameters().getDaemonCache().set(
+                        providers.gradleProperty( DAEMON_CACHE_PROPERTY )
+                                .map( Boolean::parseBoolean )
+                                .orElse( false )
+                )
+        );
+    }
+
+    /**
+     * Parses the given files, which may not exist, in parallel on a dedicated fork-join pool,
+     * so that subsequent {@link #load(File) loads} of unchanged files are served from the cache.
+     * <p>
+     * Files which cannot be parsed are skipped: the error is reported when the file is loaded.
+     */
+    public void prewarm( final Collection<File> files ) {
+        if ( files.isEmpty() ) {
+            return;
+        }
+        final ForkJoinPool pool = new ForkJoinPool( Math.min( files.size(), Runtime.getRuntime().availableProcessors() ) );
+        try {
+            pool.submit( () -> files.parallelStream().forEach( this::prewarm ) ).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void prewarm( final File file ) {
+        try {
+            load( file );
+        } catch ( RuntimeException exception ) {
+            log.debug( "Cannot prewarm environment file {}", file, exception );
+        }
+    }
+
+    /**
+     * Returns an unmodifiable map of variables declared in the given file,
+     * parsing the file only if it is not cached yet or has changed since it was cached.
+     */
+    @NonNull
+    public Map<String, String> load( final File file ) {
+        if ( isDaemonCacheEnabled() ) {
+            return loadFromDaemonCache( file );
+        }
+        if ( !file.isFile() ) {
+            return Collections.emptyMap();
+        }
+        return load( file, file.length(), () -> EnvFile.parseEnvironmentFile( file ) );
+    }
+
+    /**
+     * Returns {@code true} if files loaded by path are kept between builds of the same Gradle daemon.
+     */
+    public boolean isDaemonCacheEnabled() {
+        return getParameters().getDaemonCache().getOrElse( false );
+    }
+
+    /**
+     * Returns an unmodifiable map of variables declared in the given file content,
+     * which was already read by the caller, parsing it only if the file is not cached yet or has changed.
+     */
+    @NonNull
+    public Map<String, String> load( final File file, final byte[] content ) {
+        return load( file, content.length, () -> EnvFile.parseEnvironment( content ) );
+    }
+
+    /**
+     * Returns an unmodifiable map of variables declared in the given encrypted file content,
+     * which was already read by the caller together with the key file content.
+     * <p>
+     * The content is decrypted through the {@link DecryptionCache} only if the file is not cached yet or has changed.
+     *
+     * @throws RuntimeException if the content cannot be decrypted with the key
+     */
+    @NonNull
+    public Map<String, String> loadEncrypted( final File file, final byte[] content, final byte[] keyContent ) {
+        return load( file, content.length, () -> decryptEnvironment( file, ByteBuffer.wrap( content ), keyContent ) );
+    }
+
+    /**
+     * Returns an unmodifiable map of variables declared in the given encrypted file, which may not exist.
+     *
+     * @throws RuntimeException if the key file does not exist or the file cannot be decrypted with the key
+     */
+    @NonNull
+    public Map<String, String> loadEncrypted( final File file, final File keyFile ) {
+        if ( !file.isFile() ) {
+            return Collections.emptyMap();
+        }
+        if ( !keyFile.isFile() ) {
+            throw new RuntimeException( "Key file " + keyFile + " required to decrypt " + file + " is not found" );
+        }
+        try {
+            return loadEncrypted( file, Files.readAllBytes( file.toPath() ), Files.readAllBytes( keyFile.toPath() ) );
+        } catch ( IOException exception ) {
+            throw new RuntimeException( "Error reading encrypted environment file " + file, exception );
+        }
+    }
+
+    /**
+     * Returns the compiled schema of the given schema file, compiling it only if it is not cached yet
+     * or has changed since it was cached, so projects sharing a schema compile it once per build.
+     *
+     * @throws RuntimeException if the file cannot be read
+     * @throws IllegalArgumentException if the schema is invalid
+     */
+    @NonNull
+    EnvSchema loadSchema( final File file ) {
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+        return schemas.compute( canonicalPath( file ), ( path, cached ) -> {
+            if ( null != cached && cached.size() == size && cached.lastModified() == lastModified ) {
+                return cached;
+            }
+            try {
+                return new SchemaSnapshot( size, lastModified, EnvSchema.compile( Files.readAllBytes( file.toPath() ) ) );
+            } catch ( IOException exception ) {
+                throw new RuntimeException( "Error reading environment schema " + file, exception );
+            }
+        } ).schema();
+    }
+
+    /**
+     * Returns the content of a file referenced by a {@link EnvFileReference file-reference value},
+     * reading the file only if it is not cached yet or has changed since it was cached.
+     *
+     * @throws RuntimeException if the file cannot be read
+     */
+    @NonNull
+    String loadReference( final File file ) {
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+        final String hash = references.compute( canonicalPath( file ), ( path, cached ) -> {
+            if ( null != cached && cached.size() == size && cached.lastModified() == lastModified ) {
+                return cached;
+            }
+            final ByteBuffer content = readReference( file );
+            final String contentHash = sha256( content.duplicate() );
+            referenceContents.computeIfAbsent( contentHash, ignored -> EnvFileParser.CHARSET.decode( content ).toString() );
+            return new ReferenceSnapshot( size, lastModified, contentHash );
+        } ).hash();
+        return referenceContents.get( hash );
+    }
+
+    @NonNull
+    private static ByteBuffer readReference( final File file ) {
+        try ( final FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+            final ByteBuffer content = ByteBuffer.allocate( Math.toIntExact( channel.size() ) );
+            int read = 0;
+            while ( content.hasRemaining() && read >= 0 ) {
+                read = channel.read( content );
+            }
+            return content.flip();
+        } catch ( IOException | ArithmeticException exception ) {
+            throw new RuntimeException( "Error reading referenced file " + file, exception );
+        }
+    }
+
+    @NonNull
+    private static String sha256( final ByteBuffer content ) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+            digest.update( content );
+            return HexFormat.of().formatHex( digest.digest() );
+        } catch ( NoSuchAlgorithmException exception ) {
+            throw new IllegalStateException( "SHA-256 is not available", exception );
+        }
+    }
+
+    @NonNull
+    private static Map<String, String> decryptEnvironment(
+            final File file,
+            final ByteBuffer content,
+            final byte[] keyContent ) {
+        try {
+            return DecryptionCache.INSTANCE.read( content, EnvFileCipher.readKey( keyContent ), EnvFileParser::parse );
+        } catch ( GeneralSecurityException exception ) {
+            throw new RuntimeException( "Error decrypting environment file " + file, exception );
+        }
+    }
+
+    @NonNull
+    private Map<String, String> load(
+            final File file,
+            final long size,
+            final Supplier<Map<String, String>> parser ) {
+        final long lastModified = file.lastModified();
+        return snapshots.compute( canonicalPath( file ), ( path, cached ) -> {
+            if ( null != cached && cached.size() == size && cached.lastModified() == lastModified ) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            misses.incrementAndGet();
+            return new Snapshot( size, lastModified, EnvSnapshot.of( parser.get(), pool ) );
+        } ).variables();
+    }
+
+    @NonNull
+    private Map<String, String> loadFromDaemonCache( final File file ) {
+        final Map<String, String> cached = DaemonEnvFileCache.INSTANCE.get( file.toPath() );
+        if ( null != cached ) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        return DaemonEnvFileCache.INSTANCE.load( file.toPath() );
+    }
+
+    /**
+     * Returns the number of {@link #load(File) loads} served from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of {@link #load(File) loads} which required parsing the file.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public void close() {
+        log.info( "Environment file cache: {} hits, {} misses", getHits(), getMisses() );
+        snapshots.clear();
+        schemas.clear();
+        pool.clear();
+        references.clear();
+        referenceContents.clear();
+        DaemonEnvFileCache.INSTANCE.closeWatchService();
+        if ( !isDaemonCacheEnabled() ) {
+            DecryptionCache.INSTANCE.clear();
+        }
+    }
+
+    @NonNull
+    private static String canonicalPath( final File file ) {
+        try {
+            return file.getCanonicalPath();
+        } catch ( IOException exception ) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private record Snapshot( long size, long lastModified, Map<String, String> variables ) {
+    }
+
+    private record ReferenceSnapshot( long size, long lastModified, String hash ) {
+    }
+
+    private record SchemaSnapshot( long size, long lastModified, EnvSchema schema ) {
+    }
+}
@@ -0,0 +1,143 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * AES-GCM encryption of environment files.
+ * <p>
+ * An encrypted file consists of a {@value #IV_LENGTH}-byte initialization vector followed by the ciphertext
+ * with a {@value #TAG_LENGTH_BITS}-bit authentication tag. A key file contains a 128, 192 or 256-bit key
+ * either as raw bytes or encoded with Base64.
+ */
+final class EnvFileCipher {
+
+    /**
+     * Name of the encrypted environment file.
+     */
+    static final String ENCRYPTED_FILE_NAME = EnvFile.DEFAULT_FILE_NAME + ".enc";
+
+    /**
+     * Name of the key file looked up in the root project directory by default.
+     */
+    static final String DEFAULT_KEY_FILE_NAME = EnvFile.DEFAULT_FILE_NAME + ".key";
+
+    /**
+     * Name of the Gradle property overriding the key file location, relative to the root project directory.
+     */
+    static final String KEY_FILE_PROPERTY = "environment.keyFile";
+
+    static final int IV_LENGTH = 12;
+    static final int TAG_LENGTH_BITS = 128;
+
+    private static final String ALGORITHM = "AES";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private EnvFileCipher() {
+    }
+
+    /**
+     * Returns {@code true} if the given layer file is encrypted.
+     */
+    static boolean isEncrypted( final String fileName ) {
+        return ENCRYPTED_FILE_NAME.equals( fileName );
+    }
+
+    /**
+     * Reads a key from the content of a key file.
+     *
+     * @throws GeneralSecurityException if the content is not a valid AES key
+     */
+    @NonNull
+    static SecretKey readKey( final byte[] content ) throws GeneralSecurityException {
+        final byte[] decoded = decodeKey( content );
+        if ( null != decoded ) {
+            return new SecretKeySpec( decoded, ALGORITHM );
+        }
+        if ( isKeyLength( content.length ) ) {
+            return new SecretKeySpec( content, ALGORITHM );
+        }
+        throw new GeneralSecurityException( "Key file contains neither a raw nor a Base64 encoded AES key" );
+    }
+
+    /**
+     * Decrypts the content between the position and the limit of the given buffer in a single pass
+     * into a new direct buffer, so the plaintext never lands on the heap as a whole.
+     *
+     * @return a buffer positioned at the start of the plaintext
+     * @throws GeneralSecurityException if the content cannot be decrypted or was tampered with
+     */
+    @NonNull
+    static ByteBuffer decrypt( final ByteBuffer encrypted, final SecretKey key ) throws GeneralSecurityException {
+        if ( encrypted.remaining() < IV_LENGTH + TAG_LENGTH_BITS / Byte.SIZE ) {
+            throw new GeneralSecurityException( "Encrypted content is too short" );
+        }
+        final ByteBuffer input = encrypted.duplicate();
+        final byte[] iv = new byte[IV_LENGTH];
+        input.get( iv );
+        final Cipher cipher = Cipher.getInstance( TRANSFORMATION );
+        cipher.init( Cipher.DECRYPT_MODE, key, new GCMParameterSpec( TAG_LENGTH_BITS, iv ) );
+        final ByteBuffer plaintext = ByteBuffer.allocateDirect( cipher.getOutputSize( input.remaining() ) );
+        cipher.doFinal( input, plaintext );
+        return plaintext.flip();
+    }
+
+    /**
+     * Encrypts the given plaintext with a random initialization vector.
+     */
+    @NonNull
+    static byte[] encrypt( final byte[] plaintext, final SecretKey key ) throws GeneralSecurityException {
+        final byte[] iv = new byte[IV_LENGTH];
+        new SecureRandom().nextBytes( iv );
+        final Cipher cipher = Cipher.getInstance( TRANSFORMATION );
+        cipher.init( Cipher.ENCRYPT_MODE, key, new GCMParameterSpec( TAG_LENGTH_BITS, iv ) );
+        final ByteBuffer result = ByteBuffer.allocate( IV_LENGTH + cipher.getOutputSize( plaintext.length ) );
+        result.put( iv );
+        cipher.doFinal( ByteBuffer.wrap( plaintext ), result );
+        return result.array();
+    }
+
+    /**
+     * Returns a SHA-256 hash of the key and the encrypted content identifying the plaintext.
+     */
+    @NonNull
+    static String fingerprint( final SecretKey key, final ByteBuffer encrypted ) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+            digest.update( key.getEncoded() );
+            digest.update( encrypted.duplicate() );
+            return HexFormat.of().formatHex( digest.digest() );
+        } catch ( GeneralSecurityException exception ) {
+            throw new IllegalStateException( "SHA-256 is not available", exception );
+        }
+    }
+
+    /**
+     * Decodes a Base64 encoded key, so that a text which also looks like a raw key is preferably decoded.
+     *
+     * @return the key or {@code null} if the content is not a Base64 encoded key
+     */
+    private static byte[] decodeKey( final byte[] content ) {
+        try {
+            final byte[] key = Base64.getDecoder().decode( new String( content, StandardCharsets.ISO_8859_1 ).trim() );
+            return isKeyLength( key.length ) ? key : null;
+        } catch ( IllegalArgumentException exception ) {
+            return null;
+        }
+    }
+
+    private static boolean isKeyLength( final int length ) {
+        return 16 == length || 24 == length || 32 == length;
+    }
+}
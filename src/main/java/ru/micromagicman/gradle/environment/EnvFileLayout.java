@@ -0,0 +1,26 @@
+package ru.micromagicman.gradle.environment;
+
+import java.util.Map;
+
+/**
+ * Original layout of a parsed environment file: its raw content, parsed variables
+ * and the index of lines declaring each variable.
+ * <p>
+ * The layout allows rewriting only changed declarations while keeping comments,
+ * blank lines and formatting of the rest of the file.
+ *
+ * @param content   raw file content
+ * @param variables variables parsed from the content
+ * @param lines     byte ranges of the lines declaring each variable
+ */
+record EnvFileLayout( byte[] content, Map<String, String> variables, Map<String, Line> lines ) {
+
+    /**
+     * Byte range of a declaration line including its line break.
+     *
+     * @param start offset of the first byte of the line
+     * @param end   offset after the last byte of the line
+     */
+    record Line( int start, int end ) {
+    }
+}
@@ -0,0 +1,405 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single-pass parser of environment files working directly on bytes.
+ * <p>
+ * Supported syntax:
+ * <ul>
+ *   <li>{@code KEY=value} - the key ends at the first '=', so values may contain '='</li>
+ *   <li>{@code export KEY=value} - the {@code export} prefix is ignored</li>
+ *   <li>{@code # comment} lines and inline comments after a whitespace in unquoted values</li>
+ *   <li>{@code KEY='value'} - literal single-quoted values, which may span lines. They are kept as they are
+ *   and {@link Variables#isLiteral marked}, so the {@link EnvInterpolator} never resolves their references</li>
+ *   <li>{@code KEY="value"} - double-quoted values with {@code \n}, {@code \r}, {@code \t},
+ *   {@code \"} and {@code \\} escapes, which may span lines</li>
+ * </ul>
+ * Blank lines, lines without '=' and unquoted empty values are ignored.
+ * Content is decoded as {@link #CHARSET UTF-8}.
+ */
+final class EnvFileParser {
+
+    /**
+     * Charset used to decode environment files.
+     */
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * Files of this size and larger are memory-mapped instead of being read on heap.
+     */
+    static final long MEMORY_MAPPING_THRESHOLD = 1024 * 1024;
+
+    private static final byte[] EXPORT_PREFIX = "export".getBytes( CHARSET );
+    private static final byte[] BYTE_ORDER_MARK = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    private final ByteBuffer content;
+    private final int limit;
+    private final Map<String, EnvFileLayout.Line> lines;
+    private int position;
+    private boolean literal;
+    private byte[] scratch = new byte[64];
+
+    private EnvFileParser( final ByteBuffer content, final Map<String, EnvFileLayout.Line> lines ) {
+        this.content = content;
+        this.position = content.position();
+        this.limit = content.limit();
+        this.lines = lines;
+    }
+
+    /**
+     * Parses the given environment file into a map of key-value pairs preserving declaration order.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    @NonNull
+    static Variables parse( final Path file ) throws IOException {
+        try ( final FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+            final long size = channel.size();
+            if ( size > Integer.MAX_VALUE ) {
+                throw new IOException( "Environment file is too large: " + file );
+            }
+            if ( size >= MEMORY_MAPPING_THRESHOLD ) {
+                return parse( channel.map( FileChannel.MapMode.READ_ONLY, 0, size ) );
+            }
+            final ByteBuffer content = ByteBuffer.allocate( (int) size );
+            while ( content.hasRemaining() && channel.read( content ) >= 0 ) {
+                // read until the buffer is full or the end of file is reached
+            }
+            return parse( content.flip() );
+        }
+    }
+
+    /**
+     * Parses environment file content between the position and the limit of the given buffer.
+     */
+    @NonNull
+    static Variables parse( final ByteBuffer content ) {
+        return new EnvFileParser( content, null ).parse();
+    }
+
+    /**
+     * Parses environment file content keeping its {@link EnvFileLayout layout}.
+     * Unlike {@link #parse(ByteBuffer)}, unquoted empty declarations are kept as empty values.
+     */
+    @NonNull
+    static EnvFileLayout parseLayout( final byte[] content ) {
+        final Map<String, EnvFileLayout.Line> lines = new LinkedHashMap<>();
+        final Variables variables = new EnvFileParser( ByteBuffer.wrap( content ), lines ).parse();
+        return new EnvFileLayout( content, variables, lines );
+    }
+
+    /**
+     * Formats a value so that it is parsed back to the same string.
+     * <p>
+     * Values which would be changed by parsing (surrounding whitespaces, line breaks, leading quotes
+     * or inline comments) are double-quoted and escaped, other values are returned as is.
+     */
+    @NonNull
+    static String format( final String value ) {
+        if ( !requiresQuotes( value ) ) {
+            return value;
+        }
+        final StringBuilder result = new StringBuilder( value.length() + 2 ).append( '"' );
+        for ( int index = 0; index < value.length(); index++ ) {
+            final char current = value.charAt( index );
+            switch ( current ) {
+                case '\n' -> result.append( "\\n" );
+                case '\r' -> result.append( "\\r" );
+                case '\t' -> result.append( "\\t" );
+                case '"', '\\' -> result.append( '\\' ).append( current );
+                default -> result.append( current );
+            }
+        }
+        return result.append( '"' ).toString();
+    }
+
+    /**
+     * Formats a value like {@link #format(String)}, but single-quotes a literal value containing {@code $},
+     * so that it is parsed back as a literal too.
+     */
+    @NonNull
+    static String format( final String value, final boolean literal ) {
+        return literal && value.indexOf( '$' ) >= 0 && value.indexOf( '\'' ) < 0 ? "'" + value + "'" : format( value );
+    }
+
+    @NonNull
+    private Variables parse() {
+        final Variables variables = new Variables();
+        if ( startsWith( BYTE_ORDER_MARK ) ) {
+            position += BYTE_ORDER_MARK.length;
+        }
+        while ( position < limit ) {
+            parseLine( variables );
+        }
+        return variables;
+    }
+
+    private void parseLine( final Variables variables ) {
+        final int lineStart = position;
+        skipWhitespaces();
+        if ( position >= limit ) {
+            return;
+        }
+        final byte first = content.get( position );
+        if ( '#' == first || '\n' == first ) {
+            skipLine();
+            return;
+        }
+        if ( startsWith( EXPORT_PREFIX ) && isWhitespace( byteAt( position + EXPORT_PREFIX.length ) ) ) {
+            position += EXPORT_PREFIX.length;
+            skipWhitespaces();
+        }
+        final int keyStart = position;
+        while ( position < limit ) {
+            final byte current = content.get( position );
+            if ( '=' == current ) {
+                break;
+            }
+            if ( '\n' == current ) {
+                skipLine();
+                return;
+            }
+            position++;
+        }
+        if ( position >= limit ) {
+            return;
+        }
+        final int keyEnd = trimEnd( keyStart, position );
+        position++;
+        if ( keyEnd == keyStart ) {
+            skipLine();
+            return;
+        }
+        final String key = decode( keyStart, keyEnd );
+        final String value = parseValue();
+        if ( null != value ) {
+            variables.put( key, value, literal );
+            if ( null != lines ) {
+                lines.put( key, new EnvFileLayout.Line( lineStart, Math.min( position, limit ) ) );
+            }
+        } else if ( null != lines && !variables.containsKey( key ) ) {
+            // a layout keeps empty declarations, so rewriting the file does not append them again
+            variables.put( key, "" );
+            lines.put( key, new EnvFileLayout.Line( lineStart, Math.min( position, limit ) ) );
+        }
+    }
+
+    private String parseValue() {
+        literal = false;
+        skipWhitespaces();
+        if ( position >= limit ) {
+            return null;
+        }
+        final byte first = content.get( position );
+        if ( '"' == first || '\'' == first ) {
+            final String quoted = parseQuoted( first );
+            if ( null != quoted ) {
+                skipLine();
+                literal = '\'' == first;
+                return quoted;
+            }
+        }
+        return parseUnquoted();
+    }
+
+    /**
+     * Parses a quoted value starting at the current position.
+     *
+     * @return the value or {@code null} if the closing quote is missing
+     */
+    private String parseQuoted( final byte quote ) {
+        final int start = position + 1;
+        boolean escaped = false;
+        int length = 0;
+        for ( int index = start; index < limit; index++ ) {
+            final byte current = content.get( index );
+            if ( quote == current ) {
+                position = index + 1;
+                return escaped ? new String( scratch, 0, length, CHARSET ) : decode( start, index );
+            }
+            if ( '"' == quote && '\\' == current && index + 1 < limit ) {
+                if ( !escaped ) {
+                    length = copyToScratch( start, index );
+                    escaped = true;
+                }
+                final byte next = content.get( ++index );
+                final byte unescaped = unescape( next );
+                if ( 0 == unescaped ) {
+                    length = append( length, current );
+                    length = append( length, next );
+                } else {
+                    length = append( length, unescaped );
+                }
+            } else if ( escaped ) {
+                length = append( length, current );
+            }
+        }
+        return null;
+    }
+
+    private String parseUnquoted() {
+        final int start = position;
+        int end = -1;
+        while ( position < limit ) {
+            final byte current = content.get( position );
+            if ( '\n' == current ) {
+                break;
+            }
+            if ( -1 == end && '#' == current && position > start && isWhitespace( content.get( position - 1 ) ) ) {
+                end = position;
+            }
+            position++;
+        }
+        final int valueEnd = trimEnd( start, -1 == end ? position : end );
+        position++;
+        return valueEnd == start ? null : decode( start, valueEnd );
+    }
+
+    private void skipLine() {
+        while ( position < limit && '\n' != content.get( position ) ) {
+            position++;
+        }
+        position++;
+    }
+
+    private void skipWhitespaces() {
+        while ( position < limit && isWhitespace( content.get( position ) ) ) {
+            position++;
+        }
+    }
+
+    private int trimEnd( final int start, final int end ) {
+        int result = end;
+        while ( result > start && isWhitespace( content.get( result - 1 ) ) ) {
+            result--;
+        }
+        return result;
+    }
+
+    private boolean startsWith( final byte[] prefix ) {
+        if ( position + prefix.length > limit ) {
+            return false;
+        }
+        for ( int index = 0; index < prefix.length; index++ ) {
+            if ( prefix[index] != content.get( position + index ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte byteAt( final int index ) {
+        return index < limit ? content.get( index ) : 0;
+    }
+
+    @NonNull
+    private String decode( final int start, final int end ) {
+        if ( content.hasArray() ) {
+            return new String( content.array(), content.arrayOffset() + start, end - start, CHARSET );
+        }
+        final int length = copyToScratch( start, end );
+        return new String( scratch, 0, length, CHARSET );
+    }
+
+    private int copyToScratch( final int start, final int end ) {
+        final int length = end - start;
+        ensureScratchCapacity( length );
+        content.get( start, scratch, 0, length );
+        return length;
+    }
+
+    private int append( final int length, final byte value ) {
+        ensureScratchCapacity( length + 1 );
+        scratch[length] = value;
+        return length + 1;
+    }
+
+    private void ensureScratchCapacity( final int capacity ) {
+        if ( scratch.length < capacity ) {
+            scratch = Arrays.copyOf( scratch, Math.max( capacity, scratch.length * 2 ) );
+        }
+    }
+
+    private static byte unescape( final byte value ) {
+        return switch ( value ) {
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case '"', '\\' -> value;
+            default -> 0;
+        };
+    }
+
+    private static boolean requiresQuotes( final String value ) {
+        if ( value.isEmpty() ) {
+            return false;
+        }
+        final char first = value.charAt( 0 );
+        final char last = value.charAt( value.length() - 1 );
+        if ( '"' == first || '\'' == first || isWhitespace( first ) || isWhitespace( last ) ) {
+            return true;
+        }
+        for ( int index = 0; index < value.length(); index++ ) {
+            final char current = value.charAt( index );
+            if ( '\n' == current || ( '#' == current && index > 0 && isWhitespace( value.charAt( index - 1 ) ) ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWhitespace( final char value ) {
+        return ' ' == value || '\t' == value || '\r' == value;
+    }
+
+    private static boolean isWhitespace( final byte value ) {
+        return ' ' == value || '\t' == value || '\r' == value;
+    }
+
+    /**
+     * Parsed variables in declaration order, which remember names of literal single-quoted values.
+     */
+    static final class Variables extends LinkedHashMap<String, String> {
+
+        private final Set<String> literals = new HashSet<>();
+
+        /**
+         * Returns {@code true} if the variable is declared with a literal single-quoted value,
+         * whose references are never resolved.
+         */
+        boolean isLiteral( final Object name ) {
+            return !literals.isEmpty() && literals.contains( name );
+        }
+
+        @Override
+        public String put( final String name, final String value ) {
+            literals.remove( name );
+            return super.put( name, value );
+        }
+
+        /**
+         * Adds or replaces a variable, marking it as literal if requested.
+         */
+        String put( final String name, final String value, final boolean literal ) {
+            final String previous = put( name, value );
+            if ( literal ) {
+                literals.add( name );
+            }
+            return previous;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * File-reference values like {@code CERTIFICATE=@file:certs/server.pem}, which are replaced with the content
+ * of the referenced file only when the environment is applied to an executing task.
+ * <p>
+ * Relative paths are resolved against the project directory. References are interpolated like any other value,
+ * so {@code @file:${CERTS_DIR}/server.pem} is supported, while the content of the file is taken as it is.
+ * Referenced files are registered as the {@value #INPUT_PROPERTY} input of every
+ * {@link org.gradle.process.ProcessForkOptions} task, so Gradle tracks their content without reading them
+ * while the build is configured.
+ */
+final class EnvFileReference {
+
+    /**
+     * Prefix of a file-reference value.
+     */
+    static final String PREFIX = "@file:";
+
+    /**
+     * Name of the task input property of referenced files.
+     */
+    static final String INPUT_PROPERTY = "environmentFileReferences";
+
+    private EnvFileReference() {
+    }
+
+    /**
+     * Returns {@code true} if the value references a file.
+     */
+    static boolean isReference( final String value ) {
+        return value.startsWith( PREFIX ) && value.length() > PREFIX.length();
+    }
+
+    /**
+     * Returns the file referenced by the value, resolving a relative path against the given directory.
+     */
+    @NonNull
+    static File file( final String value, final File baseDirectory ) {
+        final File file = new File( value.substring( PREFIX.length() ) );
+        return file.isAbsolute() ? file : new File( baseDirectory, file.getPath() );
+    }
+
+    /**
+     * Returns files referenced by the given variables.
+     */
+    @NonNull
+    static List<File> files( final Map<String, String> variables, final File baseDirectory ) {
+        final List<File> files = new ArrayList<>();
+        for ( final String value : variables.values() ) {
+            if ( isReference( value ) ) {
+                files.add( file( value, baseDirectory ) );
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Replaces file-reference values with contents of the referenced files read by the given reader.
+     *
+     * @return the given map if no value references a file, a new map otherwise
+     * @throws RuntimeException if a referenced file does not exist
+     */
+    @NonNull
+    static Map<String, String> resolve(
+            final Map<String, String> variables,
+            final File baseDirectory,
+            final Function<File, String> reader ) {
+        Map<String, String> result = null;
+        for ( final Map.Entry<String, String> entry : variables.entrySet() ) {
+            if ( !isReference( entry.getValue() ) ) {
+                continue;
+            }
+            final File file = file( entry.getValue(), baseDirectory );
+            if ( !file.isFile() ) {
+                throw new RuntimeException( "File " + file + " referenced by " + entry.getKey() + " is not found" );
+            }
+            if ( null == result ) {
+                result = new LinkedHashMap<>( variables );
+            }
+            result.put( entry.getKey(), reader.apply( file ) );
+        }
+        return null != result ? result : variables;
+    }
+}
@@ -0,0 +1,258 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolver of {@code ${VAR}} and {@code ${VAR:-default}} references in values of an {@link EnvOverlay}.
+ * <p>
+ * References are resolved against variables of the overlay first and against the process environment
+ * otherwise. A default is used when the referenced variable is missing or empty and may contain references
+ * itself. {@code \$} produces a literal {@code $}, while {@link EnvOverlay#isLiteral literal} values
+ * are kept as they are.
+ * <p>
+ * The {@code ${fork.index}} reference is kept as is, because its value is known only when a task is executed,
+ * see {@link #withForkIndex}.
+ * <p>
+ * Values are resolved lazily over the dependency graph of references and memoized, so each value is computed
+ * once per overlay. Dependencies are resolved with an explicit stack, so deep reference chains do not overflow
+ * the call stack, and cyclic references fail with {@link IllegalStateException}.
+ * <p>
+ * An overlay whose layer does not redefine any referenced variable delegates to the interpolator of its parent,
+ * so per-task overlays reuse values resolved for the project.
+ */
+final class EnvInterpolator {
+
+    /**
+     * Name of the reference resolved to the {@link ForkSlotService slot} of the executing task.
+     */
+    static final String FORK_INDEX = "fork.index";
+
+    private static final String DEFAULT_SEPARATOR = ":-";
+    private static final String FORK_INDEX_REFERENCE = "${" + FORK_INDEX + "}";
+
+    private final EnvOverlay overlay;
+    private final EnvInterpolator parent;
+    private final Set<String> layerNames;
+    private final Map<String, String> resolved = new HashMap<>();
+    private String missing;
+
+    /**
+     * Creates an interpolator of the given overlay.
+     *
+     * @param parent     interpolator of the parent overlay to delegate to or {@code null}
+     * @param layerNames names declared by the top layer of the overlay, which are never delegated
+     */
+    EnvInterpolator( final EnvOverlay overlay, final EnvInterpolator parent, final Set<String> layerNames ) {
+        this.overlay = overlay;
+        this.parent = parent;
+        this.layerNames = layerNames;
+    }
+
+    /**
+     * Returns {@code true} if the value may contain references or escapes.
+     */
+    static boolean isTemplate( final String value ) {
+        return value.indexOf( '$' ) >= 0;
+    }
+
+    /**
+     * Collects names of all variables referenced by the value, including references in defaults.
+     */
+    static void collectReferences( final String value, final Collection<String> names ) {
+        if ( !isTemplate( value ) ) {
+            return;
+        }
+        int index = 0;
+        while ( index < value.length() ) {
+            final char current = value.charAt( index );
+            if ( '\\' == current && index + 1 < value.length() && '$' == value.charAt( index + 1 ) ) {
+                index += 2;
+            } else if ( isReferenceStart( value, index ) ) {
+                final int end = referenceEnd( value, index );
+                if ( end < 0 ) {
+                    return;
+                }
+                final String expression = value.substring( index + 2, end );
+                final int separator = expression.indexOf( DEFAULT_SEPARATOR );
+                names.add( separator < 0 ? expression : expression.substring( 0, separator ) );
+                if ( separator >= 0 ) {
+                    collectReferences( expression.substring( separator + DEFAULT_SEPARATOR.length() ), names );
+                }
+                index = end + 1;
+            } else {
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if any of the resolved values references {@value #FORK_INDEX}.
+     */
+    static boolean referencesForkIndex( final Map<String, String> variables ) {
+        for ( final String value : variables.values() ) {
+            if ( value.contains( FORK_INDEX_REFERENCE ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Substitutes {@code ${fork.index}} references kept in resolved values with the given index.
+     *
+     * @return the given map if no value references the index, a new map otherwise
+     */
+    @NonNull
+    static Map<String, String> withForkIndex( final Map<String, String> variables, final int index ) {
+        if ( !referencesForkIndex( variables ) ) {
+            return variables;
+        }
+        final String replacement = Integer.toString( index );
+        final Map<String, String> result = new LinkedHashMap<>( variables );
+        result.replaceAll( ( name, value ) -> value.replace( FORK_INDEX_REFERENCE, replacement ) );
+        return result;
+    }
+
+    /**
+     * Returns the resolved value of the variable or {@code null} if the overlay does not declare it.
+     *
+     * @throws IllegalStateException if the value references itself directly or through other variables
+     */
+    synchronized String resolve( final String name ) {
+        final String cached = resolved.get( name );
+        if ( null != cached || null == overlay.get( name ) ) {
+            return cached;
+        }
+        final Deque<String> path = new ArrayDeque<>();
+        final Set<String> resolving = new HashSet<>();
+        path.push( name );
+        resolving.add( name );
+        while ( !path.isEmpty() ) {
+            final String current = path.peek();
+            final String value = delegates( current ) ? parent.resolve( current ) : renderDeclared( current );
+            if ( null != value ) {
+                resolved.put( current, value );
+                resolving.remove( path.pop() );
+            } else if ( resolving.add( missing ) ) {
+                path.push( missing );
+            } else {
+                throw new IllegalStateException( "Cyclic reference in environment variables: " + cycle( path, missing ) );
+            }
+        }
+        return resolved.get( name );
+    }
+
+    private boolean delegates( final String name ) {
+        return null != parent && !layerNames.contains( name );
+    }
+
+    private String renderDeclared( final String name ) {
+        final String value = overlay.get( name );
+        return overlay.isLiteral( name ) ? value : render( value );
+    }
+
+    /**
+     * Substitutes all references of the template.
+     *
+     * @return the rendered value or {@code null} if a referenced variable is not resolved yet,
+     * in which case its name is stored in {@link #missing}
+     */
+    private String render( final String template ) {
+        if ( !isTemplate( template ) ) {
+            return template;
+        }
+        final StringBuilder result = new StringBuilder( template.length() );
+        int index = 0;
+        while ( index < template.length() ) {
+            final char current = template.charAt( index );
+            if ( '\\' == current && index + 1 < template.length() && '$' == template.charAt( index + 1 ) ) {
+                result.append( '$' );
+                index += 2;
+                continue;
+            }
+            final int end = isReferenceStart( template, index ) ? referenceEnd( template, index ) : -1;
+            if ( end < 0 ) {
+                result.append( current );
+                index++;
+                continue;
+            }
+            final String value = renderReference( template.substring( index + 2, end ) );
+            if ( null == value ) {
+                return null;
+            }
+            result.append( value );
+            index = end + 1;
+        }
+        return result.toString();
+    }
+
+    private String renderReference( final String expression ) {
+        final int separator = expression.indexOf( DEFAULT_SEPARATOR );
+        final String name = separator < 0 ? expression : expression.substring( 0, separator );
+        if ( FORK_INDEX.equals( expression ) ) {
+            return FORK_INDEX_REFERENCE;
+        }
+        final String value;
+        if ( null != overlay.get( name ) ) {
+            value = resolved.get( name );
+            if ( null == value ) {
+                missing = name;
+                return null;
+            }
+        } else {
+            value = System.getenv( name );
+        }
+        if ( null != value && !value.isEmpty() ) {
+            return value;
+        }
+        return separator < 0 ? "" : render( expression.substring( separator + DEFAULT_SEPARATOR.length() ) );
+    }
+
+    private static boolean isReferenceStart( final String value, final int index ) {
+        return '$' == value.charAt( index ) && index + 1 < value.length() && '{' == value.charAt( index + 1 );
+    }
+
+    /**
+     * Returns the index of the brace closing the reference starting at the given index or -1 if it is not closed.
+     */
+    private static int referenceEnd( final String value, final int start ) {
+        int depth = 0;
+        for ( int index = start + 2; index < value.length(); index++ ) {
+            final char current = value.charAt( index );
+            if ( '}' == current ) {
+                if ( 0 == depth ) {
+                    return index;
+                }
+                depth--;
+            } else if ( isReferenceStart( value, index ) ) {
+                depth++;
+                index++;
+            }
+        }
+        return -1;
+    }
+
+    @NonNull
+    private static String cycle( final Deque<String> path, final String name ) {
+        final StringBuilder result = new StringBuilder();
+        boolean inCycle = false;
+        for ( final Iterator<String> iterator = path.descendingIterator(); iterator.hasNext(); ) {
+            final String current = iterator.next();
+            inCycle |= current.equals( name );
+            if ( inCycle ) {
+                result.append( current ).append( " -> " );
+            }
+        }
+        return result.append( name ).toString();
+    }
+}
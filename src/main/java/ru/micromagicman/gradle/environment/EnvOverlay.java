@@ -0,0 +1,303 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+import org.gradle.process.ProcessForkOptions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable persistent stack of environment layers, where upper layers override lower ones.
+ * <p>
+ * Adding a layer creates a new overlay referencing the previous one, so layers are never copied:
+ * every per-task view shares the parsed maps of all layers below it.
+ * <p>
+ * References between variables are resolved by a lazily created {@link EnvInterpolator}.
+ * Tasks receive {@link #view views} of resolved variables filtered by {@link EnvironmentFilter rules}.
+ */
+final class EnvOverlay {
+
+    /**
+     * Overlay without any variables.
+     */
+    static final EnvOverlay EMPTY = new EnvOverlay( null, Collections.emptyMap() );
+
+    private final EnvOverlay parent;
+    private final Map<String, String> layer;
+    private volatile Map<String, String> flattened;
+    private volatile Map<String, String> resolvedVariables;
+    private volatile String fingerprint;
+    private volatile Set<String> referencedNames;
+    private volatile EnvInterpolator interpolator;
+    private final Map<EnvironmentFilter.KeyFilter, View> views = new ConcurrentHashMap<>();
+
+    private EnvOverlay( final EnvOverlay parent, final Map<String, String> layer ) {
+        this.parent = parent;
+        this.layer = layer;
+    }
+
+    /**
+     * Returns the names of layer files from the lowest to the highest priority for the given profile.
+     * The {@link EnvFileCipher#ENCRYPTED_FILE_NAME encrypted layer} must be decrypted before parsing.
+     */
+    @NonNull
+    static List<String> layerFileNames( final String profile ) {
+        final List<String> names = new ArrayList<>( List.of(
+                EnvFile.DEFAULT_FILE_NAME,
+                EnvFileCipher.ENCRYPTED_FILE_NAME,
+                EnvFile.DEFAULT_FILE_NAME + ".local"
+        ) );
+        if ( null != profile && !profile.isBlank() ) {
+            names.add( EnvFile.DEFAULT_FILE_NAME + "." + profile );
+        }
+        return names;
+    }
+
+    /**
+     * Returns an overlay with the given layer on top of this one.
+     * The layer map is referenced, not copied, so it must not be modified afterwards.
+     */
+    @NonNull
+    EnvOverlay with( final Map<String, String> layer ) {
+        return layer.isEmpty() ? this : new EnvOverlay( this, layer );
+    }
+
+    /**
+     * Returns the value of the variable from the highest layer declaring it or {@code null}.
+     */
+    String get( final String name ) {
+        for ( EnvOverlay overlay = this; null != overlay; overlay = overlay.parent ) {
+            final String value = overlay.layer.get( name );
+            if ( null != value ) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns {@code true} if the highest layer declaring the variable declares it with a literal value,
+     * which is never interpolated.
+     */
+    boolean isLiteral( final String name ) {
+        for ( EnvOverlay overlay = this; null != overlay; overlay = overlay.parent ) {
+            if ( overlay.layer.containsKey( name ) ) {
+                return EnvSnapshot.isLiteral( overlay.layer, name );
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns an unmodifiable {@link EnvSnapshot compact} map of all variables, computed once per overlay.
+     * An overlay of a single layer returns the layer itself if it is already a snapshot.
+     */
+    @NonNull
+    Map<String, String> asMap() {
+        Map<String, String> result = flattened;
+        if ( null == result ) {
+            if ( EMPTY == parent ) {
+                result = EnvSnapshot.copyOf( layer );
+            } else {
+                final EnvFileParser.Variables variables = new EnvFileParser.Variables();
+                collect( variables );
+                result = EnvSnapshot.copyOf( variables );
+            }
+            flattened = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of the variable with all references resolved or {@code null} if it is not declared.
+     *
+     * @throws IllegalStateException if the variable has a cyclic reference
+     */
+    String resolve( final String name ) {
+        return interpolator().resolve( name );
+    }
+
+    /**
+     * Returns an unmodifiable map of all variables with resolved references, computed once per overlay.
+     *
+     * @throws IllegalStateException if a variable has a cyclic reference
+     */
+    @NonNull
+    Map<String, String> resolved() {
+        Map<String, String> result = resolvedVariables;
+        if ( null == result ) {
+            final Map<String, String> variables = asMap();
+            Map<String, String> interpolated = null;
+            for ( final Map.Entry<String, String> entry : variables.entrySet() ) {
+                if ( EnvInterpolator.isTemplate( entry.getValue() ) && !isLiteral( entry.getKey() ) ) {
+                    if ( null == interpolated ) {
+                        interpolated = new LinkedHashMap<>( variables );
+                    }
+                    interpolated.put( entry.getKey(), resolve( entry.getKey() ) );
+                }
+            }
+            result = null != interpolated ? EnvSnapshot.copyOf( interpolated ) : variables;
+            resolvedVariables = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the {@link EnvironmentFingerprint fingerprint} of {@link #resolved() resolved variables},
+     * computed once per overlay.
+     *
+     * @throws IllegalStateException if a variable has a cyclic reference
+     */
+    @NonNull
+    String fingerprint() {
+        String result = fingerprint;
+        if ( null == result ) {
+            result = EnvironmentFingerprint.of( resolved() );
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the view of resolved variables passed by the given filter, created once per overlay and filter,
+     * so tasks sharing a filter share the filtered variables.
+     */
+    @NonNull
+    View view( final EnvironmentFilter.KeyFilter filter ) {
+        return views.computeIfAbsent( filter, ignored -> new View( this, filter ) );
+    }
+
+    /**
+     * Applies all variables with resolved references to a Gradle task with a single call.
+     *
+     * @return the number of applied variables
+     * @throws IllegalStateException if a variable has a cyclic reference
+     */
+    int applyForTask( final ProcessForkOptions processForkTask ) {
+        final Map<String, String> variables = resolved();
+        processForkTask.environment( variables );
+        return variables.size();
+    }
+
+    @NonNull
+    private EnvInterpolator interpolator() {
+        EnvInterpolator result = interpolator;
+        if ( null == result ) {
+            synchronized ( this ) {
+                result = interpolator;
+                if ( null == result ) {
+                    final boolean delegates = null != parent
+                            && Collections.disjoint( layer.keySet(), parent.referencedNames() );
+                    result = new EnvInterpolator( this, delegates ? parent.interpolator() : null, layer.keySet() );
+                    interpolator = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns names referenced by values of all layers but not declared by any of them,
+     * which are resolved from the environment of the Gradle process.
+     */
+    @NonNull
+    Set<String> externalNames() {
+        final Set<String> names = new TreeSet<>( referencedNames() );
+        names.remove( EnvInterpolator.FORK_INDEX );
+        names.removeIf( name -> null != get( name ) );
+        return names;
+    }
+
+    /**
+     * Returns names referenced by non-literal values of all layers, computed once per overlay.
+     */
+    @NonNull
+    private Set<String> referencedNames() {
+        Set<String> result = referencedNames;
+        if ( null == result ) {
+            final Set<String> names = null != parent ? new HashSet<>( parent.referencedNames() ) : new HashSet<>();
+            layer.forEach( ( name, value ) -> {
+                if ( !EnvSnapshot.isLiteral( layer, name ) ) {
+                    EnvInterpolator.collectReferences( value, names );
+                }
+            } );
+            result = names;
+            referencedNames = result;
+        }
+        return result;
+    }
+
+    private void collect( final EnvFileParser.Variables variables ) {
+        if ( null != parent ) {
+            parent.collect( variables );
+        }
+        layer.forEach( ( name, value ) -> variables.put( name, value, EnvSnapshot.isLiteral( layer, name ) ) );
+    }
+
+    /**
+     * Resolved variables of an overlay passed by a {@link EnvironmentFilter.KeyFilter filter}.
+     * References are resolved against all variables, so a passed variable may reference a filtered out one.
+     */
+    static final class View {
+
+        private final EnvOverlay overlay;
+        private final EnvironmentFilter.KeyFilter filter;
+        private volatile Map<String, String> variables;
+        private volatile String fingerprint;
+
+        private View( final EnvOverlay overlay, final EnvironmentFilter.KeyFilter filter ) {
+            this.overlay = overlay;
+            this.filter = filter;
+        }
+
+        /**
+         * Returns an unmodifiable map of passed variables, computed once per view.
+         *
+         * @throws IllegalStateException if a variable has a cyclic reference
+         */
+        @NonNull
+        Map<String, String> variables() {
+            if ( filter.passesAll() ) {
+                return overlay.resolved();
+            }
+            Map<String, String> result = variables;
+            if ( null == result ) {
+                final Map<String, String> passed = new LinkedHashMap<>();
+                overlay.resolved().forEach( ( name, value ) -> {
+                    if ( filter.test( name ) ) {
+                        passed.put( name, value );
+                    }
+                } );
+                result = EnvSnapshot.copyOf( passed );
+                variables = result;
+            }
+            return result;
+        }
+
+        /**
+         * Returns the {@link EnvironmentFingerprint fingerprint} of {@link #variables() passed variables},
+         * computed once per view.
+         *
+         * @throws IllegalStateException if a variable has a cyclic reference
+         */
+        @NonNull
+        String fingerprint() {
+            if ( filter.passesAll() ) {
+                return overlay.fingerprint();
+            }
+            String result = fingerprint;
+            if ( null == result ) {
+                result = EnvironmentFingerprint.of( variables() );
+                fingerprint = result;
+            }
+            return result;
+        }
+    }
+}
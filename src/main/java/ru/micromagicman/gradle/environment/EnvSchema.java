@@ -0,0 +1,217 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled schema of environment variables read from a {@value #FILE_NAME} file.
+ * <p>
+ * The schema uses the {@link EnvFileParser environment file syntax}, where a value declares rules of a variable
+ * separated by whitespaces: a type followed by any of {@code required}, {@code min=<number>}, {@code max=<number>}
+ * and {@code pattern=<regex>}, which must be the last rule and takes the rest of the value:
+ * <pre>
+ * DB_HOST=string required
+ * DB_PORT=integer required min=1 max=65535
+ * RATIO=number min=0 max=1
+ * DEBUG=boolean
+ * API_URL="string pattern=^https?://\\S+$"
+ * </pre>
+ * Supported types are {@code string}, {@code integer}, {@code number} and {@code boolean}. Ranges limit values
+ * of numeric types and lengths of strings. Rules are compiled once, so a schema may validate any number of
+ * environments. Violations never include values, which may be secrets.
+ */
+final class EnvSchema {
+
+    /**
+     * Name of the schema file.
+     */
+    static final String FILE_NAME = EnvFile.DEFAULT_FILE_NAME + ".schema";
+
+    private static final String REQUIRED = "required";
+    private static final String MIN = "min=";
+    private static final String MAX = "max=";
+    private static final String PATTERN = "pattern=";
+
+    private final List<Rule> rules;
+
+    private EnvSchema( final List<Rule> rules ) {
+        this.rules = rules;
+    }
+
+    /**
+     * Compiles a schema from the content of a schema file.
+     *
+     * @throws IllegalArgumentException if the schema declares an unknown type, rule or an invalid pattern
+     */
+    @NonNull
+    static EnvSchema compile( final byte[] content ) {
+        final Map<String, String> declarations = EnvFile.parseEnvironment( content );
+        final List<Rule> rules = new ArrayList<>( declarations.size() );
+        declarations.forEach( ( name, declaration ) -> rules.add( compileRule( name, declaration ) ) );
+        return new EnvSchema( List.copyOf( rules ) );
+    }
+
+    /**
+     * Returns the number of declared variables.
+     */
+    int size() {
+        return rules.size();
+    }
+
+    /**
+     * Validates the given environment.
+     *
+     * @return violations in the order of declarations, empty if the environment is valid
+     */
+    @NonNull
+    List<String> validate( final Map<String, String> variables ) {
+        final List<String> violations = new ArrayList<>();
+        for ( final Rule rule : rules ) {
+            final String violation = rule.validate( variables.get( rule.name() ) );
+            if ( null != violation ) {
+                violations.add( violation );
+            }
+        }
+        return violations;
+    }
+
+    @NonNull
+    private static Rule compileRule( final String name, final String declaration ) {
+        final String trimmed = declaration.trim();
+        final int typeEnd = endOfToken( trimmed, 0 );
+        final Type type = Type.of( name, trimmed.substring( 0, typeEnd ) );
+        boolean required = false;
+        Double min = null;
+        Double max = null;
+        Pattern pattern = null;
+        int position = skipWhitespaces( trimmed, typeEnd );
+        while ( position < trimmed.length() ) {
+            if ( trimmed.startsWith( PATTERN, position ) ) {
+                pattern = compilePattern( name, trimmed.substring( position + PATTERN.length() ) );
+                break;
+            }
+            final int end = endOfToken( trimmed, position );
+            final String token = trimmed.substring( position, end );
+            if ( REQUIRED.equals( token ) ) {
+                required = true;
+            } else if ( token.startsWith( MIN ) ) {
+                min = bound( name, token, MIN );
+            } else if ( token.startsWith( MAX ) ) {
+                max = bound( name, token, MAX );
+            } else {
+                throw new IllegalArgumentException( "Unknown rule '" + token + "' of " + name + " in " + FILE_NAME );
+            }
+            position = skipWhitespaces( trimmed, end );
+        }
+        return new Rule( name, type, required, min, max, pattern );
+    }
+
+    private static double bound( final String name, final String token, final String prefix ) {
+        try {
+            return Double.parseDouble( token.substring( prefix.length() ) );
+        } catch ( NumberFormatException exception ) {
+            throw new IllegalArgumentException( "Invalid rule '" + token + "' of " + name + " in " + FILE_NAME, exception );
+        }
+    }
+
+    @NonNull
+    private static Pattern compilePattern( final String name, final String regex ) {
+        try {
+            return Pattern.compile( regex );
+        } catch ( PatternSyntaxException exception ) {
+            throw new IllegalArgumentException( "Invalid pattern of " + name + " in " + FILE_NAME, exception );
+        }
+    }
+
+    private static int endOfToken( final String value, final int start ) {
+        int position = start;
+        while ( position < value.length() && !Character.isWhitespace( value.charAt( position ) ) ) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int skipWhitespaces( final String value, final int start ) {
+        int position = start;
+        while ( position < value.length() && Character.isWhitespace( value.charAt( position ) ) ) {
+            position++;
+        }
+        return position;
+    }
+
+    private enum Type {
+        STRING, INTEGER, NUMBER, BOOLEAN;
+
+        static Type of( final String name, final String type ) {
+            try {
+                return valueOf( type.toUpperCase( Locale.ROOT ) );
+            } catch ( IllegalArgumentException exception ) {
+                throw new IllegalArgumentException( "Unknown type '" + type + "' of " + name + " in " + FILE_NAME, exception );
+            }
+        }
+
+        /**
+         * Returns the value compared against ranges or {@code null} if the value does not belong to the type.
+         */
+        Double measure( final String value ) {
+            try {
+                return switch ( this ) {
+                    case STRING -> (double) value.length();
+                    case INTEGER -> (double) Long.parseLong( value );
+                    case NUMBER -> Double.parseDouble( value );
+                    case BOOLEAN -> "true".equalsIgnoreCase( value ) || "false".equalsIgnoreCase( value ) ? 0.0 : null;
+                };
+            } catch ( NumberFormatException exception ) {
+                return null;
+            }
+        }
+
+        String description() {
+            return switch ( this ) {
+                case STRING -> "a string";
+                case INTEGER -> "an integer";
+                case NUMBER -> "a number";
+                case BOOLEAN -> "a boolean";
+            };
+        }
+    }
+
+    private record Rule( String name, Type type, boolean required, Double min, Double max, Pattern pattern ) {
+
+        /**
+         * Returns a violation of the rule by the given value, which may be absent, or {@code null}.
+         */
+        String validate( final String value ) {
+            if ( null == value || value.isEmpty() ) {
+                return required ? name + " is required" : null;
+            }
+            final Double measure = type.measure( value );
+            if ( null == measure ) {
+                return name + " must be " + type.description();
+            }
+            final String subject = Type.STRING == type ? name + " length" : name;
+            if ( null != min && measure < min ) {
+                return subject + " must be at least " + format( min );
+            }
+            if ( null != max && measure > max ) {
+                return subject + " must be at most " + format( max );
+            }
+            if ( null != pattern && !pattern.matcher( value ).matches() ) {
+                return name + " must match " + pattern.pattern();
+            }
+            return null;
+        }
+
+        private static String format( final double bound ) {
+            return bound == Math.rint( bound ) && !Double.isInfinite( bound )
+                    ? Long.toString( (long) bound )
+                    : Double.toString( bound );
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Compact immutable map of environment variables keeping the declaration order.
+ * <p>
+ * A snapshot consists of a {@link KeyTable key table} and an array of values. Keys, values and key tables
+ * are deduplicated by an {@link EnvStringPool}, so projects declaring the same variables share a single key table
+ * and equal values, while each snapshot adds only its value array to the heap. Unlike a {@link java.util.LinkedHashMap},
+ * a snapshot allocates no entry per variable. Snapshots of parsed files also remember which values are
+ * {@link EnvFileParser.Variables#isLiteral literal}.
+ */
+final class EnvSnapshot extends AbstractMap<String, String> {
+
+    private static final EnvSnapshot EMPTY = new EnvSnapshot( new KeyTable( new String[0] ), new String[0], null );
+
+    private final KeyTable table;
+    private final String[] values;
+    private final boolean[] literals;
+
+    private EnvSnapshot( final KeyTable table, final String[] values, final boolean[] literals ) {
+        this.table = table;
+        this.values = values;
+        this.literals = literals;
+    }
+
+    /**
+     * Creates a snapshot of the given variables, deduplicating its keys and values by the given pool.
+     */
+    @NonNull
+    static EnvSnapshot of( final Map<String, String> variables, final EnvStringPool pool ) {
+        if ( variables.isEmpty() ) {
+            return EMPTY;
+        }
+        final String[] keys = new String[variables.size()];
+        final String[] values = new String[keys.length];
+        final boolean[] literals = copy( variables, keys, values, pool::intern );
+        return new EnvSnapshot( pool.table( keys ), values, literals );
+    }
+
+    /**
+     * Creates a snapshot of the given variables referencing their keys and values as they are,
+     * e.g. of variables merged from already pooled snapshots.
+     */
+    @NonNull
+    static EnvSnapshot copyOf( final Map<String, String> variables ) {
+        if ( variables instanceof EnvSnapshot snapshot ) {
+            return snapshot;
+        }
+        if ( variables.isEmpty() ) {
+            return EMPTY;
+        }
+        final String[] keys = new String[variables.size()];
+        final String[] values = new String[keys.length];
+        final boolean[] literals = copy( variables, keys, values, UnaryOperator.identity() );
+        return new EnvSnapshot( new KeyTable( keys ), values, literals );
+    }
+
+    /**
+     * Returns {@code true} if the given variables declare the name with a literal value,
+     * which is never interpolated.
+     */
+    static boolean isLiteral( final Map<String, String> variables, final Object name ) {
+        if ( variables instanceof EnvSnapshot snapshot ) {
+            return snapshot.isLiteral( name );
+        }
+        return variables instanceof EnvFileParser.Variables parsed && parsed.isLiteral( name );
+    }
+
+    /**
+     * Copies variables into the given arrays and returns their literal flags or {@code null} if there are none.
+     */
+    private static boolean[] copy(
+            final Map<String, String> variables,
+            final String[] keys,
+            final String[] values,
+            final UnaryOperator<String> intern ) {
+        boolean[] literals = null;
+        int index = 0;
+        for ( final Map.Entry<String, String> entry : variables.entrySet() ) {
+            keys[index] = intern.apply( Objects.requireNonNull( entry.getKey(), "Key cannot be null" ) );
+            values[index] = intern.apply( Objects.requireNonNull( entry.getValue(), "Value cannot be null" ) );
+            if ( isLiteral( variables, keys[index] ) ) {
+                if ( null == literals ) {
+                    literals = new boolean[keys.length];
+                }
+                literals[index] = true;
+            }
+            index++;
+        }
+        return literals;
+    }
+
+    /**
+     * Returns {@code true} if the variable has a literal value, which is never interpolated.
+     */
+    boolean isLiteral( final Object name ) {
+        if ( null == literals ) {
+            return false;
+        }
+        final int index = table.indexOf( name );
+        return index >= 0 && literals[index];
+    }
+
+    /**
+     * Returns {@code true} if both snapshots share the same key table instance.
+     */
+    boolean sharesKeysWith( final EnvSnapshot other ) {
+        return table == other.table;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return 0 == values.length;
+    }
+
+    @Override
+    public String get( final Object key ) {
+        final int index = table.indexOf( key );
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public boolean containsKey( final Object key ) {
+        return table.indexOf( key ) >= 0;
+    }
+
+    @Override
+    public void forEach( final BiConsumer<? super String, ? super String> action ) {
+        for ( int index = 0; index < values.length; index++ ) {
+            action.accept( table.keys[index], values[index] );
+        }
+    }
+
+    @NonNull
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<>() {
+
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < values.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if ( index >= values.length ) {
+                            throw new NoSuchElementException();
+                        }
+                        final Map.Entry<String, String> entry = new SimpleImmutableEntry<>( table.keys[index], values[index] );
+                        index++;
+                        return entry;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Ordered keys of a snapshot with an open addressing index of their positions.
+     */
+    static final class KeyTable {
+
+        private final String[] keys;
+        private final int[] slots;
+
+        KeyTable( final String[] keys ) {
+            this.keys = keys;
+            // a power of two at least twice as large as the number of keys keeps probe sequences short
+            this.slots = new int[Math.max( 2, Integer.highestOneBit( Math.max( 1, keys.length ) ) << 2 )];
+            for ( int index = 0; index < keys.length; index++ ) {
+                int slot = slot( keys[index] );
+                while ( 0 != slots[slot] ) {
+                    slot = ( slot + 1 ) & ( slots.length - 1 );
+                }
+                slots[slot] = index + 1;
+            }
+        }
+
+        /**
+         * Returns the position of the given key or {@code -1} if there is no such key.
+         */
+        int indexOf( final Object key ) {
+            if ( !( key instanceof String ) ) {
+                return -1;
+            }
+            for ( int slot = slot( key ); 0 != slots[slot]; slot = ( slot + 1 ) & ( slots.length - 1 ) ) {
+                final String candidate = keys[slots[slot] - 1];
+                if ( candidate == key || candidate.equals( key ) ) {
+                    return slots[slot] - 1;
+                }
+            }
+            return -1;
+        }
+
+        private int slot( final Object key ) {
+            final int hash = key.hashCode();
+            return ( hash ^ ( hash >>> 16 ) ) & ( slots.length - 1 );
+        }
+    }
+}
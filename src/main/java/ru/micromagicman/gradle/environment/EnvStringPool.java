@@ -0,0 +1,71 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe pool deduplicating keys, values and {@link EnvSnapshot.KeyTable key tables} of
+ * {@link EnvSnapshot snapshots}, so projects declaring the same variables share a single instance of each.
+ * <p>
+ * Pooled instances are held strongly, so a pool must live no longer than the snapshots created with it.
+ */
+final class EnvStringPool {
+
+    private final Map<String, String> strings = new ConcurrentHashMap<>();
+    private final Map<Keys, EnvSnapshot.KeyTable> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the pooled instance equal to the given string.
+     */
+    @NonNull
+    String intern( final String value ) {
+        final String pooled = strings.putIfAbsent( value, value );
+        return null != pooled ? pooled : value;
+    }
+
+    /**
+     * Returns the pooled key table of the given already interned keys, creating it if there is none.
+     */
+    @NonNull
+    EnvSnapshot.KeyTable table( final String[] keys ) {
+        return tables.computeIfAbsent( new Keys( keys ), ignored -> new EnvSnapshot.KeyTable( keys ) );
+    }
+
+    /**
+     * Returns the number of pooled strings.
+     */
+    int size() {
+        return strings.size();
+    }
+
+    /**
+     * Returns the number of pooled key tables.
+     */
+    int tables() {
+        return tables.size();
+    }
+
+    /**
+     * Drops all pooled instances. Snapshots already created keep referencing them.
+     */
+    void clear() {
+        strings.clear();
+        tables.clear();
+    }
+
+    private record Keys( String[] keys ) {
+
+        @Override
+        public boolean equals( final Object other ) {
+            return other instanceof Keys that && Arrays.equals( keys, that.keys );
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode( keys );
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.Action;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Project extension configuring the environment plugin.
+ * <pre>
+ * environment {
+ *     profile = 'ci'
+ *     minimalEnvironment = true
+ *     task('test', [DB_PORT: '5433'])
+ *     include {
+ *         types Test
+ *         keys 'DB_'
+ *     }
+ *     exclude {
+ *         tasks 'lint*'
+ *     }
+ * }
+ * </pre>
+ * Without {@link #include include} and {@link #exclude exclude} rules, every task receives all variables.
+ */
+public abstract class EnvironmentExtension {
+
+    /**
+     * Name of the extension.
+     */
+    public static final String NAME = "environment";
+
+    /**
+     * Name of the Gradle property selecting the environment profile, e.g. {@code -Penv=ci}.
+     */
+    public static final String PROFILE_PROPERTY = "env";
+
+    private final Map<String, Map<String, String>> taskOverrides = new LinkedHashMap<>();
+    private final List<EnvironmentRule> includes = new ArrayList<>();
+    private final List<EnvironmentRule> excludes = new ArrayList<>();
+    private EnvironmentFilter filter = EnvironmentFilter.NONE;
+
+    /**
+     * Environment profile. When set, variables of the {@code .env.<profile>} file override
+     * variables of {@code .env} and {@code .env.local}.
+     * <p>
+     * By default, it is taken from the {@value #PROFILE_PROPERTY} Gradle property.
+     */
+    public abstract Property<String> getProfile();
+
+    /**
+     * Whether forked processes receive only the environment of the plugin and {@link #getInheritedVariables()
+     * inherited variables} instead of the whole environment of the build.
+     * <p>
+     * By default, it is taken from the {@value MinimalEnvironment#PROPERTY} Gradle property and is disabled.
+     */
+    public abstract Property<Boolean> getMinimalEnvironment();
+
+    /**
+     * Names or globs of variables inherited by forked processes when the {@link #getMinimalEnvironment()
+     * minimal environment} is enabled, matched case-insensitively.
+     * <p>
+     * By default, it contains variables required to run processes and JVMs, like {@code PATH}, {@code HOME}
+     * and {@code JAVA_HOME}.
+     */
+    public abstract SetProperty<String> getInheritedVariables();
+
+    /**
+     * Declares variables overriding all environment files for a single task.
+     */
+    public void task( final String taskName, final Map<String, ?> variables ) {
+        final Map<String, String> overrides = new LinkedHashMap<>( taskOverrides.getOrDefault( taskName, Map.of() ) );
+        variables.forEach( ( name, value ) -> overrides.put( name, null != value ? value.toString() : "" ) );
+        taskOverrides.put( taskName, Collections.unmodifiableMap( overrides ) );
+    }
+
+    /**
+     * Declares a rule passing variables to tasks it selects. Once any include rule selects a task,
+     * the task receives only variables covered by such rules.
+     */
+    public void include( final Action<? super EnvironmentRule> action ) {
+        addRule( includes, action );
+    }
+
+    /**
+     * Declares a rule withholding variables from tasks it selects.
+     * Variables declared for a single task with {@link #task} are passed to it anyway.
+     */
+    public void exclude( final Action<? super EnvironmentRule> action ) {
+        addRule( excludes, action );
+    }
+
+    private synchronized void addRule( final List<EnvironmentRule> rules, final Action<? super EnvironmentRule> action ) {
+        final EnvironmentRule rule = new EnvironmentRule();
+        action.execute( rule );
+        rules.add( rule );
+        filter = null;
+    }
+
+    /**
+     * Returns the include and exclude rules compiled once they are all declared.
+     */
+    @NonNull
+    synchronized EnvironmentFilter filter() {
+        if ( null == filter ) {
+            filter = EnvironmentFilter.compile( includes, excludes );
+        }
+        return filter;
+    }
+
+    /**
+     * Returns variables declared for the given task.
+     */
+    @NonNull
+    Map<String, String> overridesFor( final String taskName ) {
+        return taskOverrides.getOrDefault( taskName, Collections.emptyMap() );
+    }
+
+    /**
+     * Returns variables declared for all tasks by task names.
+     */
+    @NonNull
+    Map<String, Map<String, String>> taskOverrides() {
+        return Collections.unmodifiableMap( new LinkedHashMap<>( taskOverrides ) );
+    }
+}
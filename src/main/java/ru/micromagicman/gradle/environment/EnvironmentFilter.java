@@ -0,0 +1,206 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * {@link EnvironmentRule Include and exclude rules} compiled once into a matcher of tasks and variables.
+ * <p>
+ * A variable reaches a task if any include rule selecting the task covers it, or if no include rule selects
+ * the task at all, and no exclude rule selecting the task covers it. Task name globs of a rule are compiled into
+ * a single regular expression, key prefixes of all rules selecting a task are merged into a single
+ * {@link PrefixMatcher}. Tasks selected by the same rules share a single {@link KeyFilter}, so their filtered
+ * environments are computed once.
+ */
+final class EnvironmentFilter {
+
+    /**
+     * Filter without any rules passing all variables to all tasks.
+     */
+    static final EnvironmentFilter NONE = compile( List.of(), List.of() );
+
+    private final Rule[] includes;
+    private final Rule[] excludes;
+    private final Map<BitSet, KeyFilter> filters = new ConcurrentHashMap<>();
+
+    private EnvironmentFilter( final Rule[] includes, final Rule[] excludes ) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * Compiles the given rules.
+     */
+    @NonNull
+    static EnvironmentFilter compile( final List<EnvironmentRule> includes, final List<EnvironmentRule> excludes ) {
+        return new EnvironmentFilter(
+                includes.stream().map( Rule::compile ).toArray( Rule[]::new ),
+                excludes.stream().map( Rule::compile ).toArray( Rule[]::new )
+        );
+    }
+
+    /**
+     * Returns the filter of variables passed to the task with the given name and type.
+     */
+    @NonNull
+    KeyFilter forTask( final String taskName, final Class<?> taskType ) {
+        final BitSet selected = new BitSet( includes.length + excludes.length );
+        for ( int index = 0; index < includes.length; index++ ) {
+            selected.set( index, includes[index].selects( taskName, taskType ) );
+        }
+        for ( int index = 0; index < excludes.length; index++ ) {
+            selected.set( includes.length + index, excludes[index].selects( taskName, taskType ) );
+        }
+        return selected.isEmpty() ? KeyFilter.ALL : filters.computeIfAbsent( selected, this::createFilter );
+    }
+
+    @NonNull
+    private KeyFilter createFilter( final BitSet selected ) {
+        final List<String> included = new ArrayList<>();
+        final List<String> excluded = new ArrayList<>();
+        boolean includes = false;
+        for ( int index = selected.nextSetBit( 0 ); index >= 0; index = selected.nextSetBit( index + 1 ) ) {
+            if ( index < this.includes.length ) {
+                included.addAll( this.includes[index].keyPrefixes() );
+                includes = true;
+            } else {
+                excluded.addAll( excludes[index - this.includes.length].keyPrefixes() );
+            }
+        }
+        return new KeyFilter(
+                includes ? PrefixMatcher.compile( included ) : PrefixMatcher.ALL,
+                PrefixMatcher.compile( excluded ),
+                Set.of()
+        );
+    }
+
+    /**
+     * Filter of variables passed to a task.
+     */
+    static final class KeyFilter implements Predicate<String> {
+
+        /**
+         * Filter passing all variables.
+         */
+        static final KeyFilter ALL = new KeyFilter( PrefixMatcher.ALL, PrefixMatcher.NONE, Set.of() );
+
+        private final PrefixMatcher included;
+        private final PrefixMatcher excluded;
+        private final Set<String> allowed;
+
+        private KeyFilter( final PrefixMatcher included, final PrefixMatcher excluded, final Set<String> allowed ) {
+            this.included = included;
+            this.excluded = excluded;
+            this.allowed = allowed;
+        }
+
+        /**
+         * Returns a filter additionally passing the given variables, e.g. per-task overrides.
+         */
+        @NonNull
+        KeyFilter allowing( final Set<String> keys ) {
+            return keys.isEmpty() || passesAll() ? this : new KeyFilter( included, excluded, Set.copyOf( keys ) );
+        }
+
+        /**
+         * Returns {@code true} if the filter passes all variables.
+         */
+        boolean passesAll() {
+            return PrefixMatcher.ALL == included && PrefixMatcher.NONE == excluded;
+        }
+
+        @Override
+        public boolean test( final String key ) {
+            return included.matches( key ) && !excluded.matches( key ) || allowed.contains( key );
+        }
+    }
+
+    /**
+     * Matcher of strings starting with any of the given prefixes.
+     * <p>
+     * Prefixes extending other prefixes are dropped, so the remaining ones are sorted and none of them
+     * starts with another. Then only the greatest prefix not greater than a string may be its prefix,
+     * which is found with a binary search.
+     */
+    static final class PrefixMatcher {
+
+        static final PrefixMatcher ALL = new PrefixMatcher( new String[] { "" } );
+        static final PrefixMatcher NONE = new PrefixMatcher( new String[0] );
+
+        private final String[] prefixes;
+
+        private PrefixMatcher( final String[] prefixes ) {
+            this.prefixes = prefixes;
+        }
+
+        @NonNull
+        static PrefixMatcher compile( final Collection<String> prefixes ) {
+            final List<String> minimal = new ArrayList<>();
+            for ( final String prefix : new TreeSet<>( prefixes ) ) {
+                // a sorted prefix follows every shorter prefix it starts with
+                if ( minimal.isEmpty() || !prefix.startsWith( minimal.get( minimal.size() - 1 ) ) ) {
+                    minimal.add( prefix );
+                }
+            }
+            if ( minimal.isEmpty() ) {
+                return NONE;
+            }
+            return minimal.get( 0 ).isEmpty() ? ALL : new PrefixMatcher( minimal.toArray( new String[0] ) );
+        }
+
+        boolean matches( final String value ) {
+            int low = 0;
+            int high = prefixes.length - 1;
+            while ( low <= high ) {
+                final int middle = ( low + high ) >>> 1;
+                if ( prefixes[middle].compareTo( value ) <= 0 ) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high >= 0 && value.startsWith( prefixes[high] );
+        }
+    }
+
+    private record Rule( Pattern taskNames, Class<?>[] taskTypes, boolean selectsAll, List<String> keyPrefixes ) {
+
+        @NonNull
+        static Rule compile( final EnvironmentRule rule ) {
+            final Set<String> names = rule.getTaskNames();
+            final Pattern taskNames = names.isEmpty() ? null : Pattern.compile( String.join(
+                    "|",
+                    names.stream().map( SensitiveKeyMatcher::globToRegex ).toList()
+            ) );
+            final Set<String> prefixes = rule.getKeyPrefixes();
+            return new Rule(
+                    taskNames,
+                    rule.getTaskTypes().toArray( new Class<?>[0] ),
+                    names.isEmpty() && rule.getTaskTypes().isEmpty(),
+                    prefixes.isEmpty() ? List.of( "" ) : List.copyOf( prefixes )
+            );
+        }
+
+        boolean selects( final String taskName, final Class<?> taskType ) {
+            if ( selectsAll || null != taskNames && taskNames.matcher( taskName ).matches() ) {
+                return true;
+            }
+            for ( final Class<?> type : taskTypes ) {
+                if ( type.isAssignableFrom( taskType ) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Content hash of an environment registered as the {@value #INPUT_PROPERTY} input of every
+ * {@link org.gradle.process.ProcessForkOptions} task, so build cache keys of such tasks change exactly when
+ * the environment applied to them changes.
+ * <p>
+ * The hash is a SHA-256 digest of all names and values sorted by names, so it does not depend on the order
+ * of layers. Only the digest is stored by Gradle, values, sensitive or not, never end up in the task history
+ * or in the build cache. Values are hashed before {@code ${fork.index}} is substituted, so tasks running
+ * in different slots share cache entries.
+ */
+final class EnvironmentFingerprint {
+
+    /**
+     * Name of the task input property.
+     */
+    static final String INPUT_PROPERTY = "environmentFingerprint";
+
+    private static final byte SEPARATOR = 0;
+
+    private EnvironmentFingerprint() {
+    }
+
+    /**
+     * Returns the hex-encoded SHA-256 digest of the given variables.
+     */
+    @NonNull
+    static String of( final Map<String, String> variables ) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        } catch ( NoSuchAlgorithmException exception ) {
+            throw new IllegalStateException( "SHA-256 is not available", exception );
+        }
+        // environment variables cannot contain NUL, so it separates names and values unambiguously
+        for ( final Map.Entry<String, String> entry : new TreeMap<>( variables ).entrySet() ) {
+            digest.update( entry.getKey().getBytes( EnvFileParser.CHARSET ) );
+            digest.update( SEPARATOR );
+            digest.update( entry.getValue().getBytes( EnvFileParser.CHARSET ) );
+            digest.update( SEPARATOR );
+        }
+        return HexFormat.of().formatHex( digest.digest() );
+    }
+}
@@ -0,0 +1,122 @@
+package ru.micromagicman.gradle.environment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Build-scoped collector of the time spent by the plugin and of the size of environments it handles,
+ * shared between all projects and tasks of a build and reported by {@link EnvironmentReportTask}.
+ */
+@Slf4j
+public abstract class EnvironmentMetricsService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+    /**
+     * Name of the shared build service registration.
+     */
+    public static final String NAME = "environmentMetrics";
+
+    /**
+     * Marker of an unknown number of bytes.
+     */
+    static final long UNKNOWN_BYTES = -1;
+
+    private final Queue<Measurement> measurements = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Kinds of measured operations.
+     */
+    enum Operation {
+        /**
+         * Loading a layer file of a project through the parse cache.
+         */
+        PARSE,
+        /**
+         * Applying the environment to a task.
+         */
+        APPLY,
+        /**
+         * Merging an environment file into the example file.
+         */
+        MERGE,
+        /**
+         * Writing an environment file on disk.
+         */
+        FLUSH
+    }
+
+    /**
+     * A single measured operation.
+     *
+     * @param project   path of the project the operation was performed for
+     * @param subject   name of the file or path of the task the operation was performed on
+     * @param bytes     size of the handled content or {@link #UNKNOWN_BYTES}
+     * @param variables number of handled variables
+     * @param nanos     duration of the operation
+     */
+    record Measurement( String project, String subject, Operation operation, long bytes, int variables, long nanos ) {
+    }
+
+    /**
+     * Records an operation which started at the given {@link System#nanoTime() time}.
+     */
+    void record(
+            final String project,
+            final String subject,
+            final Operation operation,
+            final long bytes,
+            final int variables,
+            final long startNanos ) {
+        measurements.add( new Measurement( project, subject, operation, bytes, variables, System.nanoTime() - startNanos ) );
+    }
+
+    /**
+     * Returns a snapshot of all operations recorded so far in the recording order.
+     */
+    @NonNull
+    List<Measurement> getMeasurements() {
+        return new ArrayList<>( measurements );
+    }
+
+    @Override
+    public void close() {
+        if ( log.isInfoEnabled() ) {
+            for ( final Operation operation : Operation.values() ) {
+                final List<Measurement> recorded = measurements.stream()
+                        .filter( measurement -> operation == measurement.operation() )
+                        .toList();
+                if ( !recorded.isEmpty() ) {
+                    log.info(
+                            "Environment {}: {} operations, {} variables in {} ms",
+                            operation.name().toLowerCase(),
+                            recorded.size(),
+                            variables( recorded ),
+                            nanos( recorded ) / 1_000_000
+                    );
+                }
+            }
+        }
+        measurements.clear();
+    }
+
+    /**
+     * Returns the total number of variables of the given measurements.
+     */
+    static long variables( final Collection<Measurement> measurements ) {
+        return measurements.stream().mapToLong( Measurement::variables ).sum();
+    }
+
+    /**
+     * Returns the total duration of the given measurements.
+     */
+    static long nanos( final Collection<Measurement> measurements ) {
+        return measurements.stream().mapToLong( Measurement::nanos ).sum();
+    }
+}
@@ -2,28 +2,319 @@ package ru.micromagicman.gradle.environment;
 
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.configuration.BuildFeatures;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskContainer;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
 import org.gradle.process.ProcessForkOptions;
 
+import javax.inject.Inject;
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
 /**
  * Environment plugin implementation.<br/>
  * This plugin attaches all variables from project .env file to all gradle task,
  * which implements {@link ProcessForkOptions process fork functionality}.
+ * <p>
+ * Variables are layered: {@code .env}, {@code .env.enc}, {@code .env.local}, {@code .env.<profile>} and per-task
+ * overrides declared in the {@link EnvironmentExtension environment extension}, where upper layers win.
+ * {@link EnvironmentRule Include and exclude rules} of the extension limit variables passed to each task.
+ * In the {@link MinimalEnvironment minimal-environment} mode, forked processes do not inherit the environment
+ * of the build except for allowlisted variables.
+ * The {@code .env.enc} layer is {@link EnvFileCipher encrypted} with the key read from the root project
+ * {@value EnvFileCipher#DEFAULT_KEY_FILE_NAME} file or from the {@value EnvFileCipher#KEY_FILE_PROPERTY} Gradle property
+ * location.
+ * <p>
+ * The plugin does not realize any tasks by itself and applies the environment to a task only when the task
+ * is about to execute, so environment files are not even parsed if no {@link ProcessForkOptions} task runs.
+ * The files are read through {@link ProviderFactory#fileContents file contents provider},
+ * which makes them configuration cache inputs. Without the configuration cache, files may be kept
+ * in a {@link DaemonEnvFileCache daemon-lifetime cache} enabled by the
+ * {@value EnvFileCacheService#DAEMON_CACHE_PROPERTY} Gradle property.
+ * <p>
+ * The {@link EnvironmentFingerprint fingerprint} of the environment is an input of every {@link ProcessForkOptions}
+ * task, so cacheable tasks like {@code Test} are not reused from the build cache once the environment changes.
+ * Files referenced by {@link EnvFileReference @file: values} are input files of such tasks and are read only when
+ * a task executes.
+ * <p>
+ * Every {@link ProcessForkOptions} task depends on the {@value ValidateEnvironmentTask#NAME} task, which checks
+ * the environment against the root project {@value EnvSchema#FILE_NAME} schema if there is one, with and without
+ * per-task overrides.
+ * <p>
+ * The root project also gets the {@value GenerateExampleEnvFilesTask#NAME} task depending on example file tasks
+ * of all projects applying the plugin.
+ * <p>
+ * Time spent on loading and applying environments is recorded by {@link EnvironmentMetricsService}
+ * and reported by the {@value EnvironmentReportTask#NAME} task.
  *
  * @author micromagicman
  */
-public class EnvironmentPlugin implements Plugin<Project> {
+public abstract class EnvironmentPlugin implements Plugin<Project> {
+
+    @Inject
+    protected abstract BuildFeatures getBuildFeatures();
+
+    @Inject
+    protected abstract BuildEventsListenerRegistry getEventsListenerRegistry();
 
     @Override
     public void apply( final Project project ) {
         final TaskContainer tasks = project.getTasks();
-        final EnvFile environmentFile;
-        environmentFile = EnvFile.forProject( project );
-        tasks.all( task -> {
-            if ( task instanceof ProcessForkOptions processForkTask ) {
-                environmentFile.applyForTask( processForkTask );
+        final ProviderFactory providers = project.getProviders();
+        final Provider<EnvFileCacheService> cache = EnvFileCacheService.register( project.getGradle(), providers );
+        final Provider<Boolean> configurationCacheActive = getBuildFeatures().getConfigurationCache().getActive();
+        final Provider<EnvironmentMetricsService> metrics = project.getGradle().getSharedServices().registerIfAbsent(
+                EnvironmentMetricsService.NAME,
+                EnvironmentMetricsService.class,
+                spec -> {
+                }
+        );
+        final Provider<ForkSlotService> forkSlots = ForkSlotService.register( project.getGradle(), getEventsListenerRegistry() );
+        final String projectPath = project.getPath();
+        final EnvironmentExtension extension = project.getExtensions()
+                .create( EnvironmentExtension.NAME, EnvironmentExtension.class );
+        extension.getProfile().convention( providers.gradleProperty( EnvironmentExtension.PROFILE_PROPERTY ) );
+        extension.getMinimalEnvironment().convention(
+                providers.gradleProperty( MinimalEnvironment.PROPERTY ).map( Boolean::parseBoolean ).orElse( false )
+        );
+        extension.getInheritedVariables().convention( MinimalEnvironment.DEFAULT_INHERITED_VARIABLES );
+        // compiled once per project on first read and absent when the mode is disabled
+        final Property<MinimalEnvironment> minimalEnvironment = project.getObjects().property( MinimalEnvironment.class );
+        minimalEnvironment.set( extension.getMinimalEnvironment().flatMap( enabled -> enabled
+                ? extension.getInheritedVariables().map( MinimalEnvironment::compile )
+                : providers.provider( () -> null ) ) );
+        minimalEnvironment.finalizeValueOnRead();
+        final Directory projectDirectory = project.getLayout().getProjectDirectory();
+        final Directory rootDirectory = projectDirectory.dir( project.getRootDir().getAbsolutePath() );
+        final Provider<RegularFile> keyFile = providers.gradleProperty( EnvFileCipher.KEY_FILE_PROPERTY )
+                .orElse( EnvFileCipher.DEFAULT_KEY_FILE_NAME )
+                .map( rootDirectory::file );
+        final Property<EnvOverlay> environment = project.getObjects().property( EnvOverlay.class );
+        environment.set( project.provider( () -> {
+            // the configuration cache must track file contents, otherwise the daemon cache avoids reading them
+            final boolean readContents = configurationCacheActive.get() || !cache.get().isDaemonCacheEnabled();
+            EnvOverlay overlay = EnvOverlay.EMPTY;
+            for ( final String fileName : EnvOverlay.layerFileNames( extension.getProfile().getOrNull() ) ) {
+                final RegularFile file = projectDirectory.file( fileName );
+                if ( EnvFileCipher.isEncrypted( fileName ) ) {
+                    overlay = overlay.with( loadEncryptedLayer( providers, cache, metrics, projectPath, file, keyFile ) );
+                } else {
+                    overlay = overlay.with( readContents
+                            ? loadLayer( providers, cache, metrics, projectPath, file )
+                            : loadLayer( cache, metrics, projectPath, file ) );
+                }
+            }
+            return overlay;
+        } ) );
+        environment.finalizeValueOnRead();
+        final TaskProvider<ValidateEnvironmentTask> validateEnvironment = tasks.register(
+                ValidateEnvironmentTask.NAME,
+                ValidateEnvironmentTask.class,
+                task -> {
+                    task.getSchemaFile().set( rootDirectory.file( EnvSchema.FILE_NAME ) );
+                    task.getEnvironmentFiles().from( project.provider( () -> EnvOverlay
+                            .layerFileNames( extension.getProfile().getOrNull() )
+                            .stream()
+                            .map( projectDirectory::file )
+                            .toList() ) );
+                    task.getKeyFile().set( keyFile );
+                    task.getTaskOverrides().set( project.provider( extension::taskOverrides ) );
+                    task.getExternalVariables().set( environment.map(
+                            overlay -> externalVariables( providers, overlay, extension.taskOverrides().values() )
+                    ) );
+                    task.getEnvironmentFileCache().set( cache );
+                    task.usesService( cache );
+                }
+        );
+        tasks.configureEach( task -> {
+            if ( task instanceof ProcessForkOptions ) {
+                final String taskName = task.getName();
+                final Class<?> taskType = task.getClass();
+                task.dependsOn( validateEnvironment );
+                task.usesService( metrics );
+                task.usesService( forkSlots );
+                final Provider<EnvOverlay.View> taskEnvironment = environment.map( overlay -> {
+                    final Map<String, String> overrides = extension.overridesFor( taskName );
+                    return overlay.with( overrides )
+                            .view( extension.filter().forTask( taskName, taskType ).allowing( overrides.keySet() ) );
+                } );
+                task.usesService( cache );
+                task.getInputs()
+                        .property( EnvironmentFingerprint.INPUT_PROPERTY, taskEnvironment.map( EnvOverlay.View::fingerprint ) );
+                task.getInputs()
+                        .files( taskEnvironment.map(
+                                view -> EnvFileReference.files( view.variables(), projectDirectory.getAsFile() )
+                        ) )
+                        .withPropertyName( EnvFileReference.INPUT_PROPERTY )
+                        .withPathSensitivity( PathSensitivity.NONE );
+                task.getInputs().property( MinimalEnvironment.PROPERTY, extension.getMinimalEnvironment() );
+                task.getInputs().property(
+                        MinimalEnvironment.INHERITED_VARIABLES_INPUT_PROPERTY,
+                        minimalEnvironment.map( MinimalEnvironment::inheritedVariables ).orElse( List.of() )
+                );
+                task.doFirst( new ApplyEnvironmentAction(
+                        projectPath,
+                        projectDirectory.getAsFile(),
+                        taskEnvironment.map( EnvOverlay.View::variables ),
+                        cache,
+                        metrics,
+                        forkSlots,
+                        minimalEnvironment
+                ) );
             }
         } );
-        tasks.register( "generateExampleEnvFile", GenerateExampleEnvFileTask.class );
+        tasks.register( GenerateExampleEnvFileTask.NAME, GenerateExampleEnvFileTask.class, task -> {
+            task.getEnvironmentFile().set( projectDirectory.file( EnvFile.DEFAULT_FILE_NAME ) );
+            task.getEncryptedEnvironmentFile().set( projectDirectory.file( EnvFileCipher.ENCRYPTED_FILE_NAME ) );
+            task.getKeyFile().set( keyFile );
+            task.getEnvironmentFileCache().set( cache );
+            task.getEnvironmentMetrics().set( metrics );
+            task.usesService( cache );
+            task.usesService( metrics );
+        } );
+        if ( project == project.getRootProject() ) {
+            // only paths and directories of other projects are read, which isolated projects allow
+            final Map<String, File> projectDirectories = new TreeMap<>();
+            project.getAllprojects().forEach( other -> projectDirectories.put( other.getPath(), other.getProjectDir() ) );
+            tasks.register(
+                    GenerateExampleEnvFilesTask.NAME,
+                    GenerateExampleEnvFilesTask.class,
+                    task -> task.dependsOn( providers.provider(
+                            () -> GenerateExampleEnvFilesTask.taskPaths( projectDirectories )
+                    ) )
+            );
+        }
+        tasks.register( EnvironmentReportTask.NAME, EnvironmentReportTask.class, task -> {
+            task.getEnvironmentMetrics().set( metrics );
+            task.usesService( metrics );
+            task.mustRunAfter(
+                    tasks.withType( ValidateEnvironmentTask.class ),
+                    tasks.withType( GenerateExampleEnvFileTask.class ),
+                    tasks.matching( ProcessForkOptions.class::isInstance )
+            );
+        } );
+    }
+
+    /**
+     * Reads variables of the Gradle process referenced by the environment with any of the overrides applied,
+     * so the configuration cache and task inputs track them.
+     */
+    @NonNull
+    private static Map<String, String> externalVariables(
+            final ProviderFactory providers,
+            final EnvOverlay environment,
+            final Collection<Map<String, String>> overrides
+    ) {
+        final Set<String> names = new TreeSet<>( environment.externalNames() );
+        overrides.forEach( layer -> names.addAll( environment.with( layer ).externalNames() ) );
+        final Map<String, String> variables = new TreeMap<>();
+        for ( final String name : names ) {
+            final String value = providers.environmentVariable( name ).getOrNull();
+            if ( null != value ) {
+                variables.put( name, value );
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * Reads variables of a single environment layer file, which may not exist.
+     */
+    private static Map<String, String> loadLayer(
+            final ProviderFactory providers,
+            final Provider<EnvFileCacheService> cache,
+            final Provider<EnvironmentMetricsService> metrics,
+            final String projectPath,
+            final RegularFile file ) {
+        return providers.fileContents( file )
+                .getAsBytes()
+                .map( content -> {
+                    final long start = System.nanoTime();
+                    final Map<String, String> variables = cache.get().load( file.getAsFile(), content );
+                    metrics.get().record(
+                            projectPath,
+                            file.getAsFile().getName(),
+                            EnvironmentMetricsService.Operation.PARSE,
+                            content.length,
+                            variables.size(),
+                            start
+                    );
+                    return variables;
+                } )
+                .getOrElse( Collections.emptyMap() );
+    }
+
+    /**
+     * Reads variables of the encrypted environment layer file, which may not exist. Both the file and the key file
+     * are read through the file contents provider, while decryption is cached for the daemon lifetime.
+     *
+     * @throws RuntimeException if the file exists, but the key file does not
+     */
+    private static Map<String, String> loadEncryptedLayer(
+            final ProviderFactory providers,
+            final Provider<EnvFileCacheService> cache,
+            final Provider<EnvironmentMetricsService> metrics,
+            final String projectPath,
+            final RegularFile file,
+            final Provider<RegularFile> keyFile ) {
+        return providers.fileContents( file )
+                .getAsBytes()
+                .map( content -> {
+                    final RegularFile key = keyFile.get();
+                    final byte[] keyContent = providers.fileContents( key ).getAsBytes().getOrNull();
+                    if ( null == keyContent ) {
+                        throw new RuntimeException(
+                                "Key file " + key.getAsFile() + " required to decrypt " + file.getAsFile() + " is not found"
+                        );
+                    }
+                    final long start = System.nanoTime();
+                    final Map<String, String> variables = cache.get().loadEncrypted( file.getAsFile(), content, keyContent );
+                    metrics.get().record(
+                            projectPath,
+                            file.getAsFile().getName(),
+                            EnvironmentMetricsService.Operation.PARSE,
+                            content.length,
+                            variables.size(),
+                            start
+                    );
+                    return variables;
+                } )
+                .getOrElse( Collections.emptyMap() );
+    }
+
+    /**
+     * Reads variables of a single environment layer file, which may not exist, without reading its contents
+     * if it is cached by the daemon.
+     */
+    private static Map<String, String> loadLayer(
+            final Provider<EnvFileCacheService> cache,
+            final Provider<EnvironmentMetricsService> metrics,
+            final String projectPath,
+            final RegularFile file ) {
+        final long start = System.nanoTime();
+        final Map<String, String> variables = cache.get().load( file.getAsFile() );
+        metrics.get().record(
+                projectPath,
+                file.getAsFile().getName(),
+                EnvironmentMetricsService.Operation.PARSE,
+                EnvironmentMetricsService.UNKNOWN_BYTES,
+                variables.size(),
+                start
+        );
+        return variables;
     }
 }
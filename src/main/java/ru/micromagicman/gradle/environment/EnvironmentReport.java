@@ -0,0 +1,156 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+import ru.micromagicman.gradle.environment.EnvironmentMetricsService.Measurement;
+import ru.micromagicman.gradle.environment.EnvironmentMetricsService.Operation;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Renders {@link EnvironmentMetricsService measurements} as JSON and HTML reports.
+ * <p>
+ * Measurements are listed from the slowest to the fastest one, so slow or oversized environment files
+ * and tasks are on top.
+ */
+final class EnvironmentReport {
+
+    private final String project;
+    private final List<Measurement> measurements;
+
+    /**
+     * Creates a report of the given project from its measurements.
+     */
+    EnvironmentReport( final String project, final List<Measurement> measurements ) {
+        this.project = project;
+        this.measurements = measurements.stream()
+                .sorted( Comparator.comparingLong( Measurement::nanos ).reversed() )
+                .toList();
+    }
+
+    /**
+     * Returns {@code true} if the measurement belongs to the given project or to one of its subprojects.
+     */
+    static boolean belongsTo( final Measurement measurement, final String project ) {
+        return ":".equals( project )
+                || project.equals( measurement.project() )
+                || measurement.project().startsWith( project + ":" );
+    }
+
+    @NonNull
+    String toJson() {
+        final StringBuilder json = new StringBuilder( 256 + measurements.size() * 128 );
+        json.append( "{\n  \"project\": " ).append( jsonString( project ) ).append( ",\n  \"totals\": {" );
+        final Operation[] operations = Operation.values();
+        for ( int index = 0; index < operations.length; index++ ) {
+            final List<Measurement> recorded = measurementsOf( operations[index] );
+            json.append( 0 == index ? "\n" : ",\n" )
+                    .append( "    " ).append( jsonString( name( operations[index] ) ) )
+                    .append( ": { \"count\": " ).append( recorded.size() )
+                    .append( ", \"variables\": " ).append( EnvironmentMetricsService.variables( recorded ) )
+                    .append( ", \"bytes\": " ).append( bytes( recorded ) )
+                    .append( ", \"millis\": " ).append( millis( EnvironmentMetricsService.nanos( recorded ) ) )
+                    .append( " }" );
+        }
+        json.append( "\n  },\n  \"measurements\": [" );
+        for ( int index = 0; index < measurements.size(); index++ ) {
+            final Measurement measurement = measurements.get( index );
+            json.append( 0 == index ? "\n" : ",\n" )
+                    .append( "    { \"project\": " ).append( jsonString( measurement.project() ) )
+                    .append( ", \"subject\": " ).append( jsonString( measurement.subject() ) )
+                    .append( ", \"operation\": " ).append( jsonString( name( measurement.operation() ) ) )
+                    .append( ", \"bytes\": " ).append( measurement.bytes() )
+                    .append( ", \"variables\": " ).append( measurement.variables() )
+                    .append( ", \"millis\": " ).append( millis( measurement.nanos() ) )
+                    .append( " }" );
+        }
+        return json.append( measurements.isEmpty() ? "]\n}\n" : "\n  ]\n}\n" ).toString();
+    }
+
+    @NonNull
+    String toHtml() {
+        final StringBuilder html = new StringBuilder( 512 + measurements.size() * 160 );
+        html.append( "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>Environment report " )
+                .append( htmlString( project ) )
+                .append( "</title>\n<style>table{border-collapse:collapse}td,th{border:1px solid #ccc;padding:2px 8px}"
+                        + "td.number{text-align:right}</style>\n</head>\n<body>\n<h1>Environment report " )
+                .append( htmlString( project ) )
+                .append( "</h1>\n<h2>Totals</h2>\n<table>\n"
+                        + "<tr><th>Operation</th><th>Count</th><th>Variables</th><th>Bytes</th><th>ms</th></tr>\n" );
+        for ( final Operation operation : Operation.values() ) {
+            final List<Measurement> recorded = measurementsOf( operation );
+            html.append( "<tr><td>" ).append( name( operation ) )
+                    .append( "</td><td class=\"number\">" ).append( recorded.size() )
+                    .append( "</td><td class=\"number\">" ).append( EnvironmentMetricsService.variables( recorded ) )
+                    .append( "</td><td class=\"number\">" ).append( bytes( recorded ) )
+                    .append( "</td><td class=\"number\">" ).append( millis( EnvironmentMetricsService.nanos( recorded ) ) )
+                    .append( "</td></tr>\n" );
+        }
+        html.append( "</table>\n<h2>Operations</h2>\n<table>\n<tr><th>Project</th><th>Subject</th><th>Operation</th>"
+                + "<th>Bytes</th><th>Variables</th><th>ms</th></tr>\n" );
+        for ( final Measurement measurement : measurements ) {
+            html.append( "<tr><td>" ).append( htmlString( measurement.project() ) )
+                    .append( "</td><td>" ).append( htmlString( measurement.subject() ) )
+                    .append( "</td><td>" ).append( name( measurement.operation() ) )
+                    .append( "</td><td class=\"number\">" )
+                    .append( EnvironmentMetricsService.UNKNOWN_BYTES == measurement.bytes() ? "" : measurement.bytes() )
+                    .append( "</td><td class=\"number\">" ).append( measurement.variables() )
+                    .append( "</td><td class=\"number\">" ).append( millis( measurement.nanos() ) )
+                    .append( "</td></tr>\n" );
+        }
+        return html.append( "</table>\n</body>\n</html>\n" ).toString();
+    }
+
+    @NonNull
+    private List<Measurement> measurementsOf( final Operation operation ) {
+        return measurements.stream().filter( measurement -> operation == measurement.operation() ).toList();
+    }
+
+    private static long bytes( final List<Measurement> measurements ) {
+        return measurements.stream()
+                .mapToLong( Measurement::bytes )
+                .filter( bytes -> EnvironmentMetricsService.UNKNOWN_BYTES != bytes )
+                .sum();
+    }
+
+    @NonNull
+    private static String name( final Operation operation ) {
+        return operation.name().toLowerCase( Locale.ROOT );
+    }
+
+    @NonNull
+    private static String millis( final long nanos ) {
+        return String.format( Locale.ROOT, "%.3f", nanos / 1_000_000.0 );
+    }
+
+    @NonNull
+    private static String jsonString( final String value ) {
+        final StringBuilder result = new StringBuilder( value.length() + 2 ).append( '"' );
+        for ( int index = 0; index < value.length(); index++ ) {
+            final char current = value.charAt( index );
+            switch ( current ) {
+                case '"', '\\' -> result.append( '\\' ).append( current );
+                case '\n' -> result.append( "\\n" );
+                case '\r' -> result.append( "\\r" );
+                case '\t' -> result.append( "\\t" );
+                default -> {
+                    if ( current < 0x20 ) {
+                        result.append( String.format( "\\u%04x", (int) current ) );
+                    } else {
+                        result.append( current );
+                    }
+                }
+            }
+        }
+        return result.append( '"' ).toString();
+    }
+
+    @NonNull
+    private static String htmlString( final String value ) {
+        return value.replace( "&", "&amp;" )
+                .replace( "<", "&lt;" )
+                .replace( ">", "&gt;" )
+                .replace( "\"", "&quot;" );
+    }
+}
@@ -0,0 +1,96 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.UntrackedTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * A Gradle task that reports how much time the plugin spent in the current build and how large the handled
+ * environments were: loading of environment files per project, applying of the environment per task,
+ * merging and writing of example files.
+ * <p>
+ * The report covers the project of the task and all its subprojects and is written as {@value #JSON_REPORT}
+ * and {@value #HTML_REPORT} into the {@link #getOutputDirectory() output directory}.
+ * <p>
+ * Environment files are loaded lazily, when the environment of the first task needing it is resolved or when
+ * the configuration cache entry is stored, so builds reusing the configuration cache report no loading.
+ * The environment is applied right before every forked task runs, so the task runs after forked, validation
+ * and example file tasks of its project scheduled in the same build.
+ */
+@UntrackedTask( because = "Reports measurements of the current build" )
+public abstract class EnvironmentReportTask extends DefaultTask {
+
+    /**
+     * Name of the task registered by the plugin.
+     */
+    public static final String NAME = "environmentReport";
+
+    /**
+     * Name of the JSON report file.
+     */
+    public static final String JSON_REPORT = "environment.json";
+
+    /**
+     * Name of the HTML report file.
+     */
+    public static final String HTML_REPORT = "environment.html";
+
+    public EnvironmentReportTask() {
+        getOutputDirectory().convention( getProject().getLayout().getBuildDirectory().dir( "reports/environment" ) );
+        getProjectPath().convention( getProject().getPath() );
+    }
+
+    /**
+     * The directory the reports are written to.
+     * <p>
+     * By default, it is {@code build/reports/environment}.
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    /**
+     * Path of the project whose measurements, including measurements of subprojects, are reported.
+     */
+    @Internal
+    public abstract Property<String> getProjectPath();
+
+    /**
+     * Build-scoped collector of the measurements shared with the plugin.
+     */
+    @Internal
+    public abstract Property<EnvironmentMetricsService> getEnvironmentMetrics();
+
+    /**
+     * Writes the JSON and HTML reports.
+     *
+     * @throws RuntimeException if an IO error occurs
+     */
+    @TaskAction
+    void execute() {
+        final String projectPath = getProjectPath().get();
+        final List<EnvironmentMetricsService.Measurement> measurements = getEnvironmentMetrics().get()
+                .getMeasurements()
+                .stream()
+                .filter( measurement -> EnvironmentReport.belongsTo( measurement, projectPath ) )
+                .toList();
+        final EnvironmentReport report = new EnvironmentReport( projectPath, measurements );
+        final File outputDirectory = getOutputDirectory().get().getAsFile();
+        try {
+            Files.createDirectories( outputDirectory.toPath() );
+            Files.writeString( new File( outputDirectory, JSON_REPORT ).toPath(), report.toJson(), EnvFileParser.CHARSET );
+            Files.writeString( new File( outputDirectory, HTML_REPORT ).toPath(), report.toHtml(), EnvFileParser.CHARSET );
+        } catch ( IOException exception ) {
+            throw new RuntimeException( "Error writing environment report", exception );
+        }
+        getLogger().lifecycle( "Environment report: {}", new File( outputDirectory, HTML_REPORT ).toURI() );
+    }
+}
@@ -0,0 +1,67 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Include or exclude rule of the {@link EnvironmentExtension environment extension} selecting tasks
+ * and variables passed to them.
+ * <pre>
+ * environment {
+ *     include {
+ *         tasks 'test', 'integration*'
+ *         types JavaExec
+ *         keys 'DB_', 'SPRING_'
+ *     }
+ * }
+ * </pre>
+ * A rule selects tasks whose names match any of the {@link #tasks globs} or whose types extend any of the
+ * {@link #types types}, a rule without both selects all tasks. A rule without {@link #keys key prefixes}
+ * covers all variables.
+ */
+public class EnvironmentRule {
+
+    private final Set<String> taskNames = new LinkedHashSet<>();
+    private final Set<Class<?>> taskTypes = new LinkedHashSet<>();
+    private final Set<String> keyPrefixes = new LinkedHashSet<>();
+
+    /**
+     * Selects tasks by names, which may contain {@code *} and {@code ?} wildcards.
+     */
+    public void tasks( final String... names ) {
+        taskNames.addAll( List.of( names ) );
+    }
+
+    /**
+     * Selects tasks of the given types or their subtypes.
+     */
+    public void types( final Class<?>... types ) {
+        taskTypes.addAll( List.of( types ) );
+    }
+
+    /**
+     * Limits the rule to variables whose names start with any of the given prefixes.
+     */
+    public void keys( final String... prefixes ) {
+        keyPrefixes.addAll( List.of( prefixes ) );
+    }
+
+    @NonNull
+    Set<String> getTaskNames() {
+        return Collections.unmodifiableSet( taskNames );
+    }
+
+    @NonNull
+    Set<Class<?>> getTaskTypes() {
+        return Collections.unmodifiableSet( taskTypes );
+    }
+
+    @NonNull
+    Set<String> getKeyPrefixes() {
+        return Collections.unmodifiableSet( keyPrefixes );
+    }
+}
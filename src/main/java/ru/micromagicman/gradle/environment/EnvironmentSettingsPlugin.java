@@ -0,0 +1,111 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.Plugin;
+import org.gradle.api.initialization.ProjectDescriptor;
+import org.gradle.api.initialization.Settings;
+import org.gradle.api.provider.Provider;
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Settings plugin implementation.<br/>
+ * This plugin finds environment files of projects requested tasks are selected from as soon as settings are
+ * evaluated and parses them in parallel into the {@link EnvFileCacheService shared cache}, so that
+ * {@link EnvironmentPlugin project plugins} receive ready-made snapshots instead of parsing files one by one
+ * while projects are configured.
+ * <p>
+ * A qualified task path selects its project only, while a task name selects the default project and all its
+ * subprojects. Files of other projects are parsed by project plugins if they are needed after all.
+ * <p>
+ * Prewarming saves parsing, not reading: when the configuration cache is active or the daemon cache is disabled,
+ * project plugins read every file again through {@link org.gradle.api.provider.ProviderFactory#fileContents}
+ * to track it as a configuration input, and then take the snapshot from the cache if the file is unchanged.
+ * <p>
+ * Files of the {@value EnvironmentExtension#PROFILE_PROPERTY} Gradle property profile are parsed too,
+ * profiles selected in build scripts and encrypted files are handled by project plugins.
+ *
+ * @author micromagicman
+ */
+public class EnvironmentSettingsPlugin implements Plugin<Settings> {
+
+    @Override
+    public void apply( final Settings settings ) {
+        final Provider<EnvFileCacheService> cache = EnvFileCacheService.register(
+                settings.getGradle(),
+                settings.getProviders()
+        );
+        final Provider<String> profile = settings.getProviders().gradleProperty( EnvironmentExtension.PROFILE_PROPERTY );
+        settings.getGradle().settingsEvaluated( evaluated -> {
+            final List<String> layerFileNames = EnvOverlay.layerFileNames( profile.getOrNull() );
+            final List<File> files = new ArrayList<>();
+            for ( final ProjectDescriptor project : requestedProjects( evaluated ) ) {
+                for ( final String fileName : layerFileNames ) {
+                    if ( !EnvFileCipher.isEncrypted( fileName ) ) {
+                        files.add( new File( project.getProjectDir(), fileName ) );
+                    }
+                }
+            }
+            cache.get().prewarm( files );
+        } );
+    }
+
+    /**
+     * Returns projects tasks requested on the command line are selected from, or the default project with all its
+     * subprojects if default tasks are requested. All projects are returned if a project path cannot be resolved,
+     * e.g. an abbreviated one.
+     */
+    @NonNull
+    private static Set<ProjectDescriptor> requestedProjects( final Settings settings ) {
+        final ProjectDescriptor defaultProject = defaultProject( settings );
+        final Set<ProjectDescriptor> projects = new LinkedHashSet<>();
+        final List<String> taskNames = settings.getStartParameter().getTaskNames();
+        if ( taskNames.isEmpty() ) {
+            collectProjects( defaultProject, projects );
+        }
+        for ( final String taskName : taskNames ) {
+            if ( taskName.startsWith( "-" ) ) {
+                continue;
+            }
+            final int separator = taskName.lastIndexOf( ':' );
+            if ( separator < 0 ) {
+                collectProjects( defaultProject, projects );
+                continue;
+            }
+            final ProjectDescriptor project = settings.findProject( projectPath( defaultProject, taskName, separator ) );
+            if ( null == project ) {
+                collectProjects( settings.getRootProject(), projects );
+                return projects;
+            }
+            projects.add( project );
+        }
+        return projects;
+    }
+
+    @NonNull
+    private static ProjectDescriptor defaultProject( final Settings settings ) {
+        final File currentDir = settings.getStartParameter().getCurrentDir();
+        final ProjectDescriptor project = null != currentDir ? settings.findProject( currentDir ) : null;
+        return null != project ? project : settings.getRootProject();
+    }
+
+    @NonNull
+    private static String projectPath( final ProjectDescriptor defaultProject, final String taskPath, final int separator ) {
+        final String path = taskPath.substring( 0, separator );
+        if ( taskPath.startsWith( ":" ) ) {
+            return path.isEmpty() ? ":" : path;
+        }
+        return ":".equals( defaultProject.getPath() ) ? ":" + path : defaultProject.getPath() + ":" + path;
+    }
+
+    private static void collectProjects( final ProjectDescriptor project, final Set<ProjectDescriptor> projects ) {
+        projects.add( project );
+        for ( final ProjectDescriptor child : project.getChildren() ) {
+            collectProjects( child, projects );
+        }
+    }
+}
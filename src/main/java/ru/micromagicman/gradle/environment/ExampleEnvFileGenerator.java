@@ -0,0 +1,122 @@
+package ru.micromagicman.gradle.environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Generates example environment files for the {@link GenerateExampleEnvFileAction work action}.
+ * <p>
+ * Sensitive patterns are compiled once per generator, so a single generator may be reused for many files.
+ * A generator is thread-safe.
+ */
+final class ExampleEnvFileGenerator {
+
+    /**
+     * Patterns of sensitive variable names used unless configured otherwise.
+     */
+    static final List<String> DEFAULT_SENSITIVE_VALUE_PATTERNS = List.of( "password", "token" );
+
+    private final Predicate<String> nonSensitiveKeys;
+    private final EnvFileCacheService cache;
+    private final EnvironmentMetricsService metrics;
+
+    /**
+     * Creates a generator. Measurements are not recorded if the metrics service is {@code null}.
+     */
+    ExampleEnvFileGenerator(
+            final List<String> sensitiveValuePatterns,
+            final EnvFileCacheService cache,
+            final EnvironmentMetricsService metrics ) {
+        this.nonSensitiveKeys = GenerateExampleEnvFileTask.nonSensitiveKeys( sensitiveValuePatterns );
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Generates the output file from the environment file and names of variables of the encrypted file.
+     * An existing output file keeps its comments and the layout of unchanged declarations.
+     *
+     * @param projectPath   path of the project measurements are recorded for
+     * @param subject       subject measurements are recorded for, e.g. a task path
+     * @param encryptedFile the encrypted file, which may be {@code null} or not exist
+     * @param keyFile       the key file, required only if the encrypted file exists
+     * @throws RuntimeException if file creation fails or an IO error occurs
+     */
+    void generate(
+            final String projectPath,
+            final String subject,
+            final File environmentFile,
+            final File encryptedFile,
+            final File keyFile,
+            final File outputFile ) {
+        try {
+            if ( !createOutputFileIfDoesNotExists( outputFile ) ) {
+                throw new RuntimeException( "Cannot create file " + outputFile.getName() );
+            }
+            final EnvFile source = EnvFile.load( environmentFile, cache );
+            final Set<String> encryptedNames = encryptedNames( encryptedFile, keyFile );
+            final EnvFileBuilder target = EnvFileBuilder.open( outputFile.getParentFile(), outputFile.getName() );
+            final long mergeStart = System.nanoTime();
+            target.retainIf( name -> source.all().containsKey( name ) || encryptedNames.contains( name ) );
+            target.mergeWith( source, nonSensitiveKeys );
+            for ( final String name : encryptedNames ) {
+                if ( !target.contains( name ) ) {
+                    target.put( name, null );
+                }
+            }
+            record( projectPath, subject, EnvironmentMetricsService.Operation.MERGE, source.file().length(), source.all().size(), mergeStart );
+            final long flushStart = System.nanoTime();
+            target.flush();
+            record( projectPath, subject, EnvironmentMetricsService.Operation.FLUSH, outputFile.length(), target.size(), flushStart );
+        } catch ( IOException exception ) {
+            throw new RuntimeException( "Error create example environment file", exception );
+        }
+    }
+
+    /**
+     * Returns names of variables declared in the encrypted file or an empty set if there is no such file.
+     */
+    private Set<String> encryptedNames( final File encryptedFile, final File keyFile ) {
+        if ( null == encryptedFile || !encryptedFile.isFile() ) {
+            return Collections.emptySet();
+        }
+        if ( null == keyFile ) {
+            throw new RuntimeException( "Key file required to decrypt " + encryptedFile + " is not set" );
+        }
+        return cache.loadEncrypted( encryptedFile, keyFile ).keySet();
+    }
+
+    private void record(
+            final String projectPath,
+            final String subject,
+            final EnvironmentMetricsService.Operation operation,
+            final long bytes,
+            final int variables,
+            final long start ) {
+        if ( null != metrics ) {
+            metrics.record( projectPath, subject, operation, bytes, variables, start );
+        }
+    }
+
+    /**
+     * Ensures the output file exists by creating it if necessary.
+     *
+     * @return {@code true} if the file exists or was successfully created,
+     * {@code false} if the file could not be created
+     * @throws IOException if an I/O error occurs during file creation
+     */
+    private static boolean createOutputFileIfDoesNotExists( final File outputFile ) throws IOException {
+        if ( outputFile.exists() ) {
+            return true;
+        }
+        final File directory = outputFile.getParentFile();
+        if ( !directory.exists() && !directory.mkdirs() ) {
+            return false;
+        }
+        return outputFile.createNewFile();
+    }
+}
@@ -0,0 +1,83 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Build-scoped allocator of {@value EnvInterpolator#FORK_INDEX} values.
+ * <p>
+ * A task whose environment references {@code ${fork.index}} leases the lowest slot not leased by any other
+ * running task right before it is executed, and the slot is released as soon as the task finishes.
+ * So tasks running at the same time, e.g. test tasks of different projects in a parallel build, always get
+ * different indexes, while the indexes stay within {@code 0..N-1} for {@code N} concurrent tasks.
+ */
+public abstract class ForkSlotService implements BuildService<BuildServiceParameters.None>, OperationCompletionListener {
+
+    /**
+     * Name of the shared build service registration.
+     */
+    public static final String NAME = "environmentForkSlots";
+
+    private final BitSet leased = new BitSet();
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /**
+     * Registers the service for the build unless it is already registered by another project. The service
+     * is subscribed to task completion events once, when it is registered.
+     */
+    @NonNull
+    static Provider<ForkSlotService> register( final Gradle gradle, final BuildEventsListenerRegistry listeners ) {
+        final boolean registered = null != gradle.getSharedServices().getRegistrations().findByName( NAME );
+        final Provider<ForkSlotService> service = gradle.getSharedServices()
+                .registerIfAbsent( NAME, ForkSlotService.class, spec -> {
+                } );
+        if ( !registered ) {
+            listeners.onTaskCompletion( service );
+        }
+        return service;
+    }
+
+    /**
+     * Leases a slot for the task with the given path, returning the slot the task already holds if any.
+     *
+     * @return index of the slot
+     */
+    synchronized int lease( final String taskPath ) {
+        final Integer existing = slots.get( taskPath );
+        if ( null != existing ) {
+            return existing;
+        }
+        final int slot = leased.nextClearBit( 0 );
+        leased.set( slot );
+        slots.put( taskPath, slot );
+        return slot;
+    }
+
+    /**
+     * Releases the slot of the task with the given path if it holds one.
+     */
+    synchronized void release( final String taskPath ) {
+        final Integer slot = slots.remove( taskPath );
+        if ( null != slot ) {
+            leased.clear( slot );
+        }
+    }
+
+    @Override
+    public void onFinish( final FinishEvent event ) {
+        if ( event instanceof TaskFinishEvent taskFinishEvent ) {
+            release( taskFinishEvent.getDescriptor().getTaskPath() );
+        }
+    }
+}
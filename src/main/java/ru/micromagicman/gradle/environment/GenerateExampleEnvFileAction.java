@@ -0,0 +1,56 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+/**
+ * Worker API action generating a single example environment file for {@link GenerateExampleEnvFileTask},
+ * so example files of different projects are generated in parallel.
+ */
+public abstract class GenerateExampleEnvFileAction implements WorkAction<GenerateExampleEnvFileAction.Parameters> {
+
+    /**
+     * Parameters of the action mirroring properties of {@link GenerateExampleEnvFileTask}.
+     */
+    public interface Parameters extends WorkParameters {
+
+        Property<String> getTaskPath();
+
+        RegularFileProperty getEnvironmentFile();
+
+        RegularFileProperty getEncryptedEnvironmentFile();
+
+        RegularFileProperty getKeyFile();
+
+        RegularFileProperty getOutputFile();
+
+        ListProperty<String> getSensitiveValuePatterns();
+
+        Property<EnvFileCacheService> getEnvironmentFileCache();
+
+        Property<EnvironmentMetricsService> getEnvironmentMetrics();
+    }
+
+    @Override
+    public void execute() {
+        final Parameters parameters = getParameters();
+        final String taskPath = parameters.getTaskPath().get();
+        new ExampleEnvFileGenerator(
+                parameters.getSensitiveValuePatterns().get(),
+                parameters.getEnvironmentFileCache().get(),
+                parameters.getEnvironmentMetrics().getOrNull()
+        ).generate(
+                GenerateExampleEnvFileTask.projectPath( taskPath ),
+                taskPath,
+                parameters.getEnvironmentFile().get().getAsFile(),
+                parameters.getEncryptedEnvironmentFile().isPresent()
+                        ? parameters.getEncryptedEnvironmentFile().get().getAsFile()
+                        : null,
+                parameters.getKeyFile().isPresent() ? parameters.getKeyFile().get().getAsFile() : null,
+                parameters.getOutputFile().get().getAsFile()
+        );
+    }
+}
@@ -1,15 +1,24 @@
 package ru.micromagicman.gradle.environment;
 
-import lombok.Getter;
-import lombok.Setter;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.NormalizeLineEndings;
+import org.gradle.workers.WorkerExecutor;
 
-import java.io.File;
-import java.io.IOException;
+import javax.inject.Inject;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * A Gradle task that generates an example environment file based on the original environment file
@@ -17,24 +26,40 @@ import java.util.List;
  * <p>
  * The example environment file serves as a template documenting the required environment variables
  * for the application, with sensitive values masked or excluded.
+ * <p>
+ * The task does not access the project at execution time, so it is compatible with the configuration cache.
+ * The output depends only on the content of the {@link #getEnvironmentFile() source file},
+ * the {@link #getEncryptedEnvironmentFile() encrypted file} and {@link #getSensitiveValuePatterns() patterns},
+ * so the task is incremental and relocatable in the build cache.
  */
-@Setter
-@Getter
-public class GenerateExampleEnvFileTask extends DefaultTask {
+@CacheableTask
+public abstract class GenerateExampleEnvFileTask extends DefaultTask {
+
+    /**
+     * Name of the task registered by the plugin in every project.
+     */
+    public static final String NAME = "generateExampleEnvFile";
 
     /**
-     * Default name for {@link #outputFile output example .env file}.
+     * Default name for {@link #getOutputFile() output example .env file}.
      */
     public static final String OUTPUT_FILE_DEFAULT_FILENAME = ".env.example";
 
+    public GenerateExampleEnvFileTask() {
+        getSensitiveValuePatterns().convention( ExampleEnvFileGenerator.DEFAULT_SENSITIVE_VALUE_PATTERNS );
+        getOutputFile().convention( getProject().getLayout().getProjectDirectory().file( OUTPUT_FILE_DEFAULT_FILENAME ) );
+    }
+
     /**
      * A list of case-insensitive patterns used to identify environment sensitive variable names
      * whose values should be excluded from the generated example file.
      * <p>
+     * A pattern is a substring of the name, a glob with {@code *} and {@code ?} wildcards matching the whole name
+     * or a regular expression prefixed with {@code regex:}.
      * By default, excludes variables containing "password" or "token" in their names.
      */
     @Input
-    private List<String> sensitiveValuePatterns = List.of( "password", "token" );
+    public abstract ListProperty<String> getSensitiveValuePatterns();
 
     /**
      * The output file where the example environment configuration will be generated.
@@ -43,57 +68,97 @@ public class GenerateExampleEnvFileTask extends DefaultTask {
      * but without sensitive values.
      */
     @OutputFile
-    private File outputFile = getProject().file( OUTPUT_FILE_DEFAULT_FILENAME );
+    public abstract RegularFileProperty getOutputFile();
+
+    /**
+     * The source environment file the example is generated from.
+     * <p>
+     * By default, it is the .env file located in the project directory.
+     */
+    @InputFiles
+    @Optional
+    @PathSensitive( PathSensitivity.NONE )
+    @NormalizeLineEndings
+    public abstract RegularFileProperty getEnvironmentFile();
+
+    /**
+     * The encrypted environment file, whose variables are added to the example with blank values,
+     * so that secrets never leak into it.
+     * <p>
+     * By default, it is the .env.enc file located in the project directory.
+     */
+    @InputFiles
+    @Optional
+    @PathSensitive( PathSensitivity.NONE )
+    public abstract RegularFileProperty getEncryptedEnvironmentFile();
+
+    /**
+     * The key file the {@link #getEncryptedEnvironmentFile() encrypted file} is decrypted with. It is not an input:
+     * only names of encrypted variables end up in the example.
+     */
+    @Internal
+    public abstract RegularFileProperty getKeyFile();
+
+    /**
+     * Build-scoped cache of parsed environment files shared with the plugin.
+     */
+    @Internal
+    public abstract Property<EnvFileCacheService> getEnvironmentFileCache();
+
+    /**
+     * Build-scoped collector of merge and flush measurements shared with the plugin. Measurements are not
+     * recorded if it is not set.
+     */
+    @Internal
+    public abstract Property<EnvironmentMetricsService> getEnvironmentMetrics();
+
+    /**
+     * Worker executor the generation is submitted to.
+     */
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
 
     /**
      * Executes the task action to generate the example environment file.
      * <p>
-     * The method:
+     * The generation is submitted to the Worker API, so example files of different projects
+     * are generated in parallel. The action:
      * <ol>
      *   <li>Creates the output file if it doesn't exist</li>
-     *   <li>Merges the project's environment variables with the target file</li>
-     *   <li>Excludes sensitive values based on {@code excludeValuePatterns}</li>
+     *   <li>Merges the project's environment variables into an empty target file</li>
+     *   <li>Excludes sensitive values based on {@code sensitiveValuePatterns}</li>
+     *   <li>Adds names of encrypted variables with blank values</li>
      *   <li>Writes the result to the output file</li>
      * </ol>
-     *
-     * @throws RuntimeException if file creation fails or an IO error occurs
      */
     @TaskAction
     void execute() {
-        try {
-            if ( !createOutputFileIfDoesNotExists() ) {
-                throw new RuntimeException( "Cannot create file " + outputFile.getName() );
-            }
-            final EnvFile target = new EnvFile( outputFile.getParentFile(), outputFile.getName() );
-            target.mergeWith( EnvFile.forProject( getProject() ), key -> {
-                for ( String pattern : sensitiveValuePatterns ) {
-                    if ( key.toLowerCase().contains( pattern ) ) {
-                        return false;
-                    }
-                }
-                return true;
-            } );
-            target.flush();
-        } catch ( IOException exception ) {
-            throw new RuntimeException( "Error create example environment file", exception );
-        }
+        getWorkerExecutor().noIsolation().submit( GenerateExampleEnvFileAction.class, parameters -> {
+            parameters.getTaskPath().set( getPath() );
+            parameters.getEnvironmentFile().set( getEnvironmentFile() );
+            parameters.getEncryptedEnvironmentFile().set( getEncryptedEnvironmentFile() );
+            parameters.getKeyFile().set( getKeyFile() );
+            parameters.getOutputFile().set( getOutputFile() );
+            parameters.getSensitiveValuePatterns().set( getSensitiveValuePatterns() );
+            parameters.getEnvironmentFileCache().set( getEnvironmentFileCache() );
+            parameters.getEnvironmentMetrics().set( getEnvironmentMetrics() );
+        } );
     }
 
     /**
-     * Ensures the output file exists by creating it if necessary.
-     *
-     * @return {@code true} if the file exists or was successfully created,
-     * {@code false} if the file could not be created
-     * @throws IOException if an I/O error occurs during file creation
+     * Returns the path of the project owning the task with the given path.
+     */
+    static String projectPath( final String taskPath ) {
+        final int separator = taskPath.lastIndexOf( ':' );
+        return separator > 0 ? taskPath.substring( 0, separator ) : ":";
+    }
+
+    /**
+     * Creates a predicate accepting environment variable names which match none of the sensitive patterns.
+     * <p>
+     * Patterns are compiled once into a {@link SensitiveKeyMatcher}.
      */
-    private boolean createOutputFileIfDoesNotExists() throws IOException {
-        if ( outputFile.exists() ) {
-            return true;
-        }
-        final File directory = outputFile.getParentFile();
-        if ( !directory.exists() && !directory.mkdirs() ) {
-            return false;
-        }
-        return outputFile.createNewFile();
+    static Predicate<String> nonSensitiveKeys( final List<String> sensitiveValuePatterns ) {
+        return SensitiveKeyMatcher.compile( sensitiveValuePatterns ).negate();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,50 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Gradle task that generates example environment files of all projects having an environment.
+ * <p>
+ * The task has no outputs and no actions of its own: it depends on {@link GenerateExampleEnvFileTask} tasks of
+ * projects having {@code .env} or {@code .env.enc} files, whose paths are computed from paths of the projects,
+ * so the root project never accesses models of other projects. Every project keeps its own sensitive patterns,
+ * example files stay cacheable, and they are generated in parallel on the Worker API.
+ * <p>
+ * Projects having an environment are expected to apply the plugin, e.g. with {@code allprojects}
+ * or {@code subprojects}, otherwise their example file tasks are not found.
+ */
+public abstract class GenerateExampleEnvFilesTask extends DefaultTask {
+
+    /**
+     * Name of the task registered by the plugin in the root project.
+     */
+    public static final String NAME = "generateExampleEnvFiles";
+
+    /**
+     * Returns paths of example file tasks of projects with the given paths and directories,
+     * which have a {@code .env} or {@code .env.enc} file.
+     */
+    @NonNull
+    static List<String> taskPaths( final Map<String, File> projectDirectories ) {
+        return projectDirectories.entrySet()
+                .stream()
+                .filter( project -> hasEnvironment( project.getValue() ) )
+                .map( project -> taskPath( project.getKey() ) )
+                .toList();
+    }
+
+    @NonNull
+    private static String taskPath( final String projectPath ) {
+        return ( ":".equals( projectPath ) ? "" : projectPath ) + ":" + GenerateExampleEnvFileTask.NAME;
+    }
+
+    private static boolean hasEnvironment( final File projectDirectory ) {
+        return new File( projectDirectory, EnvFile.DEFAULT_FILE_NAME ).isFile()
+                || new File( projectDirectory, EnvFileCipher.ENCRYPTED_FILE_NAME ).isFile();
+    }
+}
@@ -0,0 +1,123 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Allowlist of variables inherited by forked processes in the minimal-environment mode, where a process receives
+ * only the environment of the plugin and inherited variables matching the allowlist instead of the whole
+ * environment of the build.
+ * <p>
+ * Entries are variable names or globs with {@code *} and {@code ?} wildcards matched case-insensitively,
+ * so they cover Windows variables like {@code Path} too. Exact names are looked up in a hash set and globs are
+ * compiled into a single regular expression.
+ */
+final class MinimalEnvironment {
+
+    /**
+     * Name of the Gradle property enabling the mode, e.g. {@code environment.minimal=true} in {@code gradle.properties}.
+     */
+    static final String PROPERTY = "environment.minimal";
+
+    /**
+     * Name of the task input property tracking the allowlist of the enabled mode.
+     */
+    static final String INHERITED_VARIABLES_INPUT_PROPERTY = "environment.inheritedVariables";
+
+    /**
+     * Variables inherited by default, required to run processes and JVMs on common platforms.
+     */
+    static final List<String> DEFAULT_INHERITED_VARIABLES = List.of(
+            "PATH",
+            "HOME",
+            "USER",
+            "JAVA_HOME",
+            "TMPDIR",
+            "TMP",
+            "TEMP",
+            "LANG",
+            "LC_*",
+            "TZ",
+            "SYSTEMROOT",
+            "WINDIR",
+            "COMSPEC",
+            "PATHEXT"
+    );
+
+    private final List<String> inheritedVariables;
+    private final Set<String> names;
+    private final Pattern globs;
+
+    private MinimalEnvironment( final List<String> inheritedVariables, final Set<String> names, final Pattern globs ) {
+        this.inheritedVariables = inheritedVariables;
+        this.names = names;
+        this.globs = globs;
+    }
+
+    /**
+     * Compiles the given allowlist.
+     */
+    @NonNull
+    static MinimalEnvironment compile( final Collection<String> inheritedVariables ) {
+        final Set<String> names = new HashSet<>();
+        final List<String> globs = new ArrayList<>();
+        for ( final String variable : inheritedVariables ) {
+            if ( variable.indexOf( '*' ) >= 0 || variable.indexOf( '?' ) >= 0 ) {
+                globs.add( SensitiveKeyMatcher.globToRegex( variable ) );
+            } else {
+                names.add( variable.toUpperCase( Locale.ROOT ) );
+            }
+        }
+        return new MinimalEnvironment(
+                inheritedVariables.stream().sorted().distinct().toList(),
+                names,
+                globs.isEmpty() ? null : Pattern.compile( String.join( "|", globs ), Pattern.CASE_INSENSITIVE )
+        );
+    }
+
+    /**
+     * Returns the sorted entries of the allowlist.
+     */
+    @NonNull
+    List<String> inheritedVariables() {
+        return inheritedVariables;
+    }
+
+    /**
+     * Returns {@code true} if the variable with the given name is inherited.
+     */
+    boolean inherits( final String name ) {
+        return names.contains( name.toUpperCase( Locale.ROOT ) ) || null != globs && globs.matcher( name ).matches();
+    }
+
+    /**
+     * Returns the environment of a process consisting of allowlisted variables of the inherited environment
+     * and the given variables. Variables of the current task environment absent from the inherited one
+     * or having a different value were set by the build script, so they are kept and take precedence.
+     */
+    @NonNull
+    Map<String, Object> of(
+            final Map<String, ?> current,
+            final Map<String, String> inherited,
+            final Map<String, String> variables ) {
+        final Map<String, Object> taskVariables = ApplyEnvironmentAction.taskVariables( current, inherited );
+        final Map<String, Object> environment = new LinkedHashMap<>();
+        current.forEach( ( name, value ) -> {
+            if ( inherits( name ) && !taskVariables.containsKey( name ) ) {
+                environment.put( name, value );
+            }
+        } );
+        environment.putAll( variables );
+        environment.putAll( taskVariables );
+        return environment;
+    }
+}
@@ -0,0 +1,263 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Case-insensitive matcher of sensitive environment variable names compiled once from a list of patterns.
+ * <p>
+ * Supported pattern kinds:
+ * <ul>
+ *   <li>{@code regex:<expression>} - a regular expression found anywhere in the key</li>
+ *   <li>glob with {@code *} or {@code ?} wildcards - matched against the whole key</li>
+ *   <li>any other text - a substring of the key</li>
+ * </ul>
+ * All substring patterns are compiled into a single Aho-Corasick automaton, so a key is scanned once
+ * without allocations regardless of the number of patterns. Regular expressions and globs are checked
+ * only if no substring pattern matches.
+ */
+final class SensitiveKeyMatcher implements Predicate<String> {
+
+    /**
+     * Prefix of regular expression patterns.
+     */
+    static final String REGEX_PREFIX = "regex:";
+
+    private static final int ROOT = 0;
+    private static final int ASCII_LIMIT = 128;
+
+    private final boolean matchesAll;
+    private final int[] asciiAlphabet;
+    private final int asciiSymbols;
+    private final char[] extendedAlphabet;
+    private final int width;
+    private final int[] transitions;
+    private final boolean[] terminal;
+    private final Pattern[] expressions;
+
+    private SensitiveKeyMatcher(
+            final boolean matchesAll,
+            final int[] asciiAlphabet,
+            final int asciiSymbols,
+            final char[] extendedAlphabet,
+            final int[] transitions,
+            final boolean[] terminal,
+            final Pattern[] expressions ) {
+        this.matchesAll = matchesAll;
+        this.asciiAlphabet = asciiAlphabet;
+        this.asciiSymbols = asciiSymbols;
+        this.extendedAlphabet = extendedAlphabet;
+        this.width = asciiSymbols + extendedAlphabet.length;
+        this.transitions = transitions;
+        this.terminal = terminal;
+        this.expressions = expressions;
+    }
+
+    /**
+     * Compiles the given patterns into a matcher.
+     */
+    @NonNull
+    static SensitiveKeyMatcher compile( final Collection<String> patterns ) {
+        final List<String> substrings = new ArrayList<>();
+        final List<Pattern> expressions = new ArrayList<>();
+        boolean matchesAll = false;
+        for ( final String pattern : patterns ) {
+            if ( pattern.startsWith( REGEX_PREFIX ) ) {
+                final String expression = pattern.substring( REGEX_PREFIX.length() );
+                expressions.add( Pattern.compile( expression, Pattern.CASE_INSENSITIVE ) );
+            } else if ( pattern.indexOf( '*' ) >= 0 || pattern.indexOf( '?' ) >= 0 ) {
+                expressions.add( Pattern.compile( globToRegex( pattern ), Pattern.CASE_INSENSITIVE ) );
+            } else if ( pattern.isEmpty() ) {
+                matchesAll = true;
+            } else {
+                substrings.add( lowerCase( pattern ) );
+            }
+        }
+        return Automaton.build( matchesAll, substrings, expressions.toArray( new Pattern[0] ) );
+    }
+
+    /**
+     * Returns {@code true} if the given key matches any of the sensitive patterns.
+     */
+    @Override
+    public boolean test( final String key ) {
+        if ( matchesAll ) {
+            return true;
+        }
+        int state = ROOT;
+        for ( int index = 0; index < key.length(); index++ ) {
+            final int symbol = symbolOf( Character.toLowerCase( key.charAt( index ) ) );
+            state = symbol < 0 ? ROOT : transitions[state * width + symbol];
+            if ( terminal[state] ) {
+                return true;
+            }
+        }
+        for ( final Pattern expression : expressions ) {
+            if ( expression.matcher( key ).find() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int symbolOf( final char value ) {
+        if ( value < ASCII_LIMIT ) {
+            return asciiAlphabet[value];
+        }
+        final int index = Arrays.binarySearch( extendedAlphabet, value );
+        return index < 0 ? -1 : asciiSymbols + index;
+    }
+
+    @NonNull
+    private static String lowerCase( final String value ) {
+        final char[] result = value.toCharArray();
+        for ( int index = 0; index < result.length; index++ ) {
+            result[index] = Character.toLowerCase( result[index] );
+        }
+        return new String( result );
+    }
+
+    /**
+     * Converts a glob with {@code *} and {@code ?} wildcards into a regular expression matching the whole input.
+     */
+    @NonNull
+    static String globToRegex( final String glob ) {
+        final StringBuilder regex = new StringBuilder( "^" );
+        int literalStart = 0;
+        for ( int index = 0; index < glob.length(); index++ ) {
+            final char current = glob.charAt( index );
+            if ( '*' == current || '?' == current ) {
+                if ( index > literalStart ) {
+                    regex.append( Pattern.quote( glob.substring( literalStart, index ) ) );
+                }
+                regex.append( '*' == current ? ".*" : "." );
+                literalStart = index + 1;
+            }
+        }
+        if ( glob.length() > literalStart ) {
+            regex.append( Pattern.quote( glob.substring( literalStart ) ) );
+        }
+        return regex.append( '$' ).toString();
+    }
+
+    /**
+     * Builder of the deterministic Aho-Corasick automaton: a trie whose missing transitions
+     * are resolved through failure links. Only characters present in patterns form the alphabet,
+     * so the transition table stays compact.
+     */
+    private static final class Automaton {
+
+        private final int[] asciiAlphabet = new int[ASCII_LIMIT];
+        private int asciiSymbols;
+        private final char[] extendedAlphabet;
+        private final int width;
+        private int[] transitions;
+        private boolean[] terminal;
+        private int states = 1;
+
+        private Automaton( final List<String> substrings ) {
+            Arrays.fill( asciiAlphabet, -1 );
+            final TreeSet<Character> extended = new TreeSet<>();
+            for ( final String substring : substrings ) {
+                for ( int index = 0; index < substring.length(); index++ ) {
+                    final char value = substring.charAt( index );
+                    if ( value >= ASCII_LIMIT ) {
+                        extended.add( value );
+                    } else if ( asciiAlphabet[value] < 0 ) {
+                        asciiAlphabet[value] = asciiSymbols++;
+                    }
+                }
+            }
+            this.extendedAlphabet = new char[extended.size()];
+            int position = 0;
+            for ( final char value : extended ) {
+                extendedAlphabet[position++] = value;
+            }
+            this.width = asciiSymbols + extendedAlphabet.length;
+            int capacity = 1;
+            for ( final String substring : substrings ) {
+                capacity += substring.length();
+            }
+            this.transitions = new int[capacity * width];
+            this.terminal = new boolean[capacity];
+        }
+
+        @NonNull
+        static SensitiveKeyMatcher build(
+                final boolean matchesAll,
+                final List<String> substrings,
+                final Pattern[] expressions ) {
+            final Automaton automaton = new Automaton( substrings );
+            for ( final String substring : substrings ) {
+                automaton.add( substring );
+            }
+            automaton.resolveFailureLinks();
+            return new SensitiveKeyMatcher(
+                    matchesAll,
+                    automaton.asciiAlphabet,
+                    automaton.asciiSymbols,
+                    automaton.extendedAlphabet,
+                    Arrays.copyOf( automaton.transitions, automaton.states * automaton.width ),
+                    Arrays.copyOf( automaton.terminal, automaton.states ),
+                    expressions
+            );
+        }
+
+        private void add( final String substring ) {
+            int state = ROOT;
+            for ( int index = 0; index < substring.length(); index++ ) {
+                final int cell = state * width + symbolOf( substring.charAt( index ) );
+                if ( 0 == transitions[cell] ) {
+                    transitions[cell] = states++;
+                }
+                state = transitions[cell];
+            }
+            terminal[state] = true;
+        }
+
+        /**
+         * Breadth-first traversal replacing missing transitions with transitions of the failure state,
+         * which turns the trie into a deterministic automaton.
+         */
+        private void resolveFailureLinks() {
+            final int[] failure = new int[states];
+            final Queue<Integer> queue = new ArrayDeque<>();
+            for ( int symbol = 0; symbol < width; symbol++ ) {
+                final int next = transitions[symbol];
+                if ( ROOT != next ) {
+                    failure[next] = ROOT;
+                    queue.add( next );
+                }
+            }
+            while ( !queue.isEmpty() ) {
+                final int state = queue.poll();
+                terminal[state] |= terminal[failure[state]];
+                for ( int symbol = 0; symbol < width; symbol++ ) {
+                    final int cell = state * width + symbol;
+                    final int next = transitions[cell];
+                    if ( ROOT == next ) {
+                        transitions[cell] = transitions[failure[state] * width + symbol];
+                    } else {
+                        failure[next] = transitions[failure[state] * width + symbol];
+                        queue.add( next );
+                    }
+                }
+            }
+        }
+
+        private int symbolOf( final char value ) {
+            return value < ASCII_LIMIT
+                    ? asciiAlphabet[value]
+                    : asciiSymbols + Arrays.binarySearch( extendedAlphabet, value );
+        }
+    }
+}
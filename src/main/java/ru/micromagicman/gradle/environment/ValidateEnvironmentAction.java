@@ -0,0 +1,96 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.internal.impldep.org.eclipse.jgit.annotations.NonNull;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Worker API action validating the environment of a single project for {@link ValidateEnvironmentTask},
+ * so environments of different projects are validated in parallel.
+ */
+public abstract class ValidateEnvironmentAction implements WorkAction<ValidateEnvironmentAction.Parameters> {
+
+    /**
+     * Parameters of the action mirroring properties of {@link ValidateEnvironmentTask}.
+     */
+    public interface Parameters extends WorkParameters {
+
+        Property<String> getTaskPath();
+
+        ConfigurableFileCollection getEnvironmentFiles();
+
+        RegularFileProperty getSchemaFile();
+
+        RegularFileProperty getKeyFile();
+
+        MapProperty<String, Map<String, String>> getTaskOverrides();
+
+        RegularFileProperty getReportFile();
+
+        Property<EnvFileCacheService> getEnvironmentFileCache();
+    }
+
+    @Override
+    public void execute() {
+        final Parameters parameters = getParameters();
+        final EnvFileCacheService cache = parameters.getEnvironmentFileCache().get();
+        final EnvSchema schema = cache.loadSchema( parameters.getSchemaFile().get().getAsFile() );
+        EnvOverlay environment = EnvOverlay.EMPTY;
+        for ( final File file : parameters.getEnvironmentFiles() ) {
+            environment = environment.with( EnvFileCipher.isEncrypted( file.getName() )
+                    ? cache.loadEncrypted( file, parameters.getKeyFile().get().getAsFile() )
+                    : cache.load( file ) );
+        }
+        final List<String> violations = validate( schema, environment );
+        // tasks declaring the same overrides share an environment, which is validated once
+        final Map<Map<String, String>, List<String>> taskNames = new LinkedHashMap<>();
+        parameters.getTaskOverrides().get().forEach( ( taskName, overrides ) -> {
+            if ( !overrides.isEmpty() ) {
+                taskNames.computeIfAbsent( overrides, key -> new ArrayList<>() ).add( taskName );
+            }
+        } );
+        for ( final Map.Entry<Map<String, String>, List<String>> tasks : taskNames.entrySet() ) {
+            for ( final String violation : validate( schema, environment.with( tasks.getKey() ) ) ) {
+                if ( !violations.contains( violation ) ) {
+                    violations.add( violation + " for " + String.join( ", ", tasks.getValue() ) );
+                }
+            }
+        }
+        writeReport( parameters.getReportFile().get().getAsFile(), schema, violations );
+        if ( !violations.isEmpty() ) {
+            final String projectPath = GenerateExampleEnvFileTask.projectPath( parameters.getTaskPath().get() );
+            throw new RuntimeException( "Environment of " + projectPath + " does not match " + EnvSchema.FILE_NAME
+                    + ":\n  " + String.join( "\n  ", violations ) );
+        }
+    }
+
+    @NonNull
+    private static List<String> validate( final EnvSchema schema, final EnvOverlay environment ) {
+        // values are validated as they are applied to the first concurrently running task
+        return schema.validate( EnvInterpolator.withForkIndex( environment.resolved(), 0 ) );
+    }
+
+    private static void writeReport( final File reportFile, final EnvSchema schema, final List<String> violations ) {
+        final String report = violations.isEmpty()
+                ? schema.size() + " declared variables are valid\n"
+                : String.join( "\n", violations ) + "\n";
+        try {
+            Files.createDirectories( reportFile.toPath().getParent() );
+            Files.writeString( reportFile.toPath(), report, EnvFileParser.CHARSET );
+        } catch ( IOException exception ) {
+            throw new RuntimeException( "Error writing environment validation report", exception );
+        }
+    }
+}
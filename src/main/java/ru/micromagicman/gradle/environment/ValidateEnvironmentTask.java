@@ -0,0 +1,129 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.SkipWhenEmpty;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.NormalizeLineEndings;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.util.Map;
+
+/**
+ * A Gradle task that validates the layered environment of a project against a {@value EnvSchema#FILE_NAME} schema,
+ * so a missing or malformed variable fails the build before any process is forked.
+ * <p>
+ * The plugin makes every {@link org.gradle.process.ProcessForkOptions} task depend on this task. The schema is
+ * compiled once per build for all projects sharing it, and validation is submitted to the Worker API, so
+ * environments of different projects are validated in parallel. The task is skipped if there is no schema.
+ * <p>
+ * The environment is validated as is and with {@link EnvironmentExtension#task(String, Map) overrides} of every task
+ * applied. Variables of the Gradle process referenced by the environment are inputs along with the schema,
+ * environment files and overrides, so the task is cacheable.
+ */
+@CacheableTask
+public abstract class ValidateEnvironmentTask extends DefaultTask {
+
+    /**
+     * Name of the task registered by the plugin.
+     */
+    public static final String NAME = "validateEnvironment";
+
+    public ValidateEnvironmentTask() {
+        getReportFile().convention( getProject().getLayout().getBuildDirectory().file( "environment/validation.txt" ) );
+    }
+
+    /**
+     * The schema file.
+     * <p>
+     * By default, it is the {@value EnvSchema#FILE_NAME} file located in the root project directory.
+     */
+    @InputFiles
+    @SkipWhenEmpty
+    @PathSensitive( PathSensitivity.NONE )
+    @NormalizeLineEndings
+    public abstract RegularFileProperty getSchemaFile();
+
+    /**
+     * Environment layer files from the lowest to the highest priority, which may not exist.
+     * <p>
+     * By default, they are layer files of the project for the selected profile.
+     */
+    @InputFiles
+    @PathSensitive( PathSensitivity.NAME_ONLY )
+    public abstract ConfigurableFileCollection getEnvironmentFiles();
+
+    /**
+     * The key file encrypted layer files are decrypted with.
+     */
+    @InputFiles
+    @Optional
+    @PathSensitive( PathSensitivity.NONE )
+    public abstract RegularFileProperty getKeyFile();
+
+    /**
+     * Variables overriding environment files by names of tasks they are declared for.
+     * <p>
+     * By default, they are overrides declared in the {@code environment} extension.
+     */
+    @Input
+    public abstract MapProperty<String, Map<String, String>> getTaskOverrides();
+
+    /**
+     * Variables of the Gradle process referenced by the environment and overrides, but not declared by them.
+     * <p>
+     * Missing variables are absent, so setting any of them invalidates the result.
+     */
+    @Input
+    public abstract MapProperty<String, String> getExternalVariables();
+
+    /**
+     * The file the validation result is written to.
+     * <p>
+     * By default, it is {@code build/environment/validation.txt}.
+     */
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
+
+    /**
+     * Build-scoped cache of parsed environment files and compiled schemas shared with the plugin.
+     */
+    @Internal
+    public abstract Property<EnvFileCacheService> getEnvironmentFileCache();
+
+    /**
+     * Worker executor the validation is submitted to.
+     */
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    /**
+     * Validates the environment.
+     *
+     * @throws RuntimeException if the environment does not match the schema
+     */
+    @TaskAction
+    void execute() {
+        getWorkerExecutor().noIsolation().submit( ValidateEnvironmentAction.class, parameters -> {
+            parameters.getTaskPath().set( getPath() );
+            parameters.getEnvironmentFiles().from( getEnvironmentFiles() );
+            parameters.getSchemaFile().set( getSchemaFile() );
+            parameters.getKeyFile().set( getKeyFile() );
+            parameters.getTaskOverrides().set( getTaskOverrides() );
+            parameters.getReportFile().set( getReportFile() );
+            parameters.getEnvironmentFileCache().set( getEnvironmentFileCache() );
+        } );
+    }
+}
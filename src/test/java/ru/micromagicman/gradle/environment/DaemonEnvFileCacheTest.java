@@ -0,0 +1,162 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DaemonEnvFileCacheTest {
+
+    private static final long EVENT_TIMEOUT_MILLIS = 30_000;
+    private static final int READERS = 8;
+    private static final int WRITES = 200;
+
+    private TestProject testProject;
+    private WatchService watchService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testProject = new TestProject( "daemon-env-file-cache-test" );
+        watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        watchService.close();
+    }
+
+    @Test
+    void testSnapshotIsReused() throws IOException {
+        final DaemonEnvFileCache cache = new DaemonEnvFileCache( () -> watchService );
+        final Path file = addEnvFile( "A=1\n" );
+        assertNull( cache.get( file ) );
+        final Map<String, String> variables = cache.load( file );
+        assertEquals( Map.of( "A", "1" ), variables );
+        assertSame( variables, cache.get( file ) );
+        assertSame( variables, cache.get( file.getParent().resolve( "./.env" ) ) );
+    }
+
+    @Test
+    void testModifiedFileIsInvalidatedByWatchService() throws IOException, InterruptedException {
+        final DaemonEnvFileCache cache = new DaemonEnvFileCache( () -> watchService );
+        final Path file = addEnvFile( "A=1\n" );
+        cache.load( file );
+        addEnvFile( "A=2\n" );
+        awaitInvalidation( cache, file );
+        assertEquals( Map.of( "A", "2" ), cache.load( file ) );
+    }
+
+    @Test
+    void testCreatedFileIsInvalidatedByWatchService() throws IOException, InterruptedException {
+        final DaemonEnvFileCache cache = new DaemonEnvFileCache( () -> watchService );
+        final Path file = testProject.directory.toPath().resolve( ".env" );
+        assertEquals( Collections.emptyMap(), cache.load( file ) );
+        addEnvFile( "A=1\n" );
+        awaitInvalidation( cache, file );
+        assertEquals( Map.of( "A", "1" ), cache.load( file ) );
+    }
+
+    @Test
+    void testModifiedFileIsInvalidatedByAttributesWithoutWatchService() throws IOException {
+        final DaemonEnvFileCache cache = new DaemonEnvFileCache( () -> null );
+        final Path file = addEnvFile( "A=1\n" );
+        final Map<String, String> variables = cache.load( file );
+        assertSame( variables, cache.get( file ) );
+        addEnvFile( "A=22\n" );
+        assertNull( cache.get( file ) );
+        cache.load( file );
+        addEnvFile( "A=33\n" );
+        Files.setLastModifiedTime( file, FileTime.fromMillis( Files.getLastModifiedTime( file ).toMillis() + 2000 ) );
+        assertNull( cache.get( file ) );
+        Files.delete( file );
+        cache.load( file );
+        assertEquals( Collections.emptyMap(), cache.get( file ) );
+    }
+
+    @Test
+    void testWatchServiceIsClosedAndSnapshotsAreValidatedByAttributes() throws IOException {
+        final DaemonEnvFileCache cache = new DaemonEnvFileCache( () -> watchService );
+        final Path file = addEnvFile( "A=1\n" );
+        final Map<String, String> variables = cache.load( file );
+        cache.closeWatchService();
+        assertThrows( ClosedWatchServiceException.class, watchService::poll );
+        assertSame( variables, cache.get( file ) );
+        addEnvFile( "A=22\n" );
+        assertNull( cache.get( file ) );
+    }
+
+    @Test
+    void testSnapshotOfFileChangedWhileLoadingIsNotTrusted() throws Exception {
+        final DaemonEnvFileCache cache = new DaemonEnvFileCache( () -> watchService );
+        // a long file widens the window between reading attributes and storing the snapshot
+        final String padding = "PADDING=value\n".repeat( 10_000 );
+        final Path file = addEnvFile( padding + "A=0\n" );
+        final AtomicBoolean reading = new AtomicBoolean( true );
+        final ExecutorService executor = Executors.newFixedThreadPool( READERS );
+        try {
+            final List<Future<?>> readers = new ArrayList<>();
+            for ( int reader = 0; reader < READERS; reader++ ) {
+                readers.add( executor.submit( () -> {
+                    while ( reading.get() ) {
+                        if ( null == cache.get( file ) ) {
+                            cache.load( file );
+                        }
+                    }
+                    return null;
+                } ) );
+            }
+            for ( int write = 1; write <= WRITES; write++ ) {
+                addEnvFile( padding + "A=" + write + "\n" );
+                final String expected = String.valueOf( write );
+                final long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MILLIS;
+                Map<String, String> variables;
+                while ( null == ( variables = cache.get( file ) ) || !expected.equals( variables.get( "A" ) ) ) {
+                    assertTrue( System.currentTimeMillis() < deadline, "Stale snapshot is trusted: A=" + expected );
+                    Thread.sleep( 1 );
+                }
+            }
+            reading.set( false );
+            for ( final Future<?> reader : readers ) {
+                reader.get( 1, TimeUnit.MINUTES );
+            }
+        } finally {
+            reading.set( false );
+            executor.shutdownNow();
+        }
+    }
+
+    private Path addEnvFile( final String content ) throws IOException {
+        testProject.addFile( ".env", content );
+        return testProject.directory.toPath().resolve( ".env" );
+    }
+
+    private static void awaitInvalidation( final DaemonEnvFileCache cache, final Path file ) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MILLIS;
+        while ( null != cache.get( file ) ) {
+            assertTrue( System.currentTimeMillis() < deadline, "Snapshot was not invalidated" );
+            Thread.sleep( 10 );
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecryptionCacheTest {
+
+    private static final byte[] RAW_KEY = "0123456789abcdef".getBytes( StandardCharsets.US_ASCII );
+
+    @Test
+    void testPlaintextIsDecryptedOnce() throws GeneralSecurityException {
+        final DecryptionCache cache = new DecryptionCache();
+        final SecretKey key = EnvFileCipher.readKey( RAW_KEY );
+        final ByteBuffer encrypted = encrypt( "A=1\n", key );
+        final List<ByteBuffer> plaintexts = new ArrayList<>();
+        assertEquals( Map.of( "A", "1" ), cache.read( encrypted, key, EnvFileParser::parse ) );
+        cache.read( encrypted, key, plaintexts::add );
+        cache.read( encrypted.duplicate(), key, plaintexts::add );
+        assertEquals( 1, cache.size() );
+        assertEquals( 2, plaintexts.size() );
+        assertTrue( plaintexts.get( 0 ).isReadOnly() );
+        assertEquals( plaintexts.get( 0 ), plaintexts.get( 1 ) );
+    }
+
+    @Test
+    void testEvictedPlaintextIsZeroed() throws GeneralSecurityException {
+        final DecryptionCache cache = new DecryptionCache();
+        final SecretKey key = EnvFileCipher.readKey( RAW_KEY );
+        final List<ByteBuffer> plaintexts = new ArrayList<>();
+        cache.read( encrypt( "SECRET=1\n", key ), key, plaintexts::add );
+        for ( int index = 0; index < DecryptionCache.MAX_ENTRIES; index++ ) {
+            cache.read( encrypt( "A=" + index + "\n", key ), key, plaintext -> null );
+        }
+        assertEquals( DecryptionCache.MAX_ENTRIES, cache.size() );
+        assertZeroed( plaintexts.get( 0 ) );
+        cache.read( encrypt( "B=1\n", key ), key, plaintexts::add );
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        assertZeroed( plaintexts.get( 1 ) );
+    }
+
+    @Test
+    void testWrongKeyIsRejected() throws GeneralSecurityException {
+        final DecryptionCache cache = new DecryptionCache();
+        final ByteBuffer encrypted = encrypt( "A=1\n", EnvFileCipher.readKey( RAW_KEY ) );
+        final SecretKey wrongKey = EnvFileCipher.readKey( "fedcba9876543210".getBytes( StandardCharsets.US_ASCII ) );
+        assertThrows( GeneralSecurityException.class, () -> cache.read( encrypted, wrongKey, EnvFileParser::parse ) );
+        assertEquals( 0, cache.size() );
+    }
+
+    private static ByteBuffer encrypt( final String content, final SecretKey key ) throws GeneralSecurityException {
+        return ByteBuffer.wrap( EnvFileCipher.encrypt( content.getBytes( StandardCharsets.UTF_8 ), key ) );
+    }
+
+    private static void assertZeroed( final ByteBuffer buffer ) {
+        for ( int index = 0; index < buffer.limit(); index++ ) {
+            assertEquals( 0, buffer.get( index ) );
+        }
+    }
+}
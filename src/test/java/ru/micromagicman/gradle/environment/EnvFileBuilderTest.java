@@ -0,0 +1,145 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvFileBuilderTest {
+
+    @Test
+    void testPutError() {
+        final EnvFileBuilder builder = EnvFileBuilder.create( new File( ".env" ) );
+        assertThrows(
+                NullPointerException.class,
+                () -> builder.put( null, "value" )
+        );
+    }
+
+    @Test
+    void testPutOk() {
+        final EnvFileBuilder builder = EnvFileBuilder.create( new File( ".env" ) );
+        builder.put( "key", "value" );
+        assertEquals( Map.of( "key", "value" ), builder.build().all() );
+    }
+
+    @Test
+    void testFlushSuccess() throws IOException {
+        final TestProject testProject = new TestProject( "flush-test" );
+        final EnvFileBuilder builder = EnvFileBuilder.open( testProject.directory, ".env" );
+        builder.put( "HELLO", "WORLD" );
+        builder.put( "THIS_IS_TRUE", true );
+        builder.put( "EMPTY", null );
+        builder.flush();
+        testProject.assertProjectFile(
+                ".env",
+                """
+                        HELLO=WORLD
+                        THIS_IS_TRUE=true
+                        EMPTY=
+                        """
+        );
+    }
+
+    @Test
+    void testFlushPreservesLayout() throws IOException {
+        final TestProject testProject = new TestProject( "flush-layout-test" );
+        testProject.addFile(
+                ".env",
+                """
+                        # database
+                        DB_HOST=localhost # local host
+
+                          export DB_PORT = 5432
+                        API_TOKEN="token"
+                        """
+        );
+        final EnvFileBuilder builder = EnvFileBuilder.open( testProject.directory, ".env" );
+        builder.put( "DB_PORT", 5433 );
+        builder.put( "GREETING", "hello\nworld" );
+        builder.flush();
+        testProject.assertProjectFile(
+                ".env",
+                """
+                        # database
+                        DB_HOST=localhost # local host
+
+                        DB_PORT=5433
+                        API_TOKEN="token"
+                        GREETING="hello\\nworld"
+                        """
+        );
+        assertEquals( builder.build().all(), EnvFile.read( testProject.directory, ".env" ).all() );
+    }
+
+    @Test
+    void testFlushDropsRemovedDeclarations() throws IOException {
+        final TestProject testProject = new TestProject( "flush-removed-test" );
+        testProject.addFile( ".env", "# first\nA=1\n# second\nB=2\nC=3" );
+        final EnvFileBuilder builder = EnvFileBuilder.open( testProject.directory, ".env" );
+        builder.retainIf( name -> !"B".equals( name ) && !"C".equals( name ) );
+        builder.put( "D", 4 );
+        builder.flush();
+        testProject.assertProjectFile( ".env", "# first\nA=1\n# second\nD=4\n" );
+    }
+
+    @Test
+    void testFlushSkipsUnchangedFile() throws IOException {
+        final TestProject testProject = new TestProject( "flush-unchanged-test" );
+        testProject.addFile( ".env", "# comment\nA=1\n" );
+        final File file = new File( testProject.directory, ".env" );
+        assertTrue( file.setLastModified( 1_000_000L ), "Cannot set modification time" );
+        final EnvFileBuilder builder = EnvFileBuilder.open( testProject.directory, ".env" );
+        builder.put( "A", 1 );
+        builder.flush();
+        assertEquals( 1_000_000L, file.lastModified() );
+        testProject.assertProjectFile( ".env", "# comment\nA=1\n" );
+    }
+
+    @Test
+    void testFlushTwiceKeepsEmptyDeclarations() throws IOException {
+        final TestProject testProject = new TestProject( "flush-empty-test" );
+        final EnvFileBuilder builder = EnvFileBuilder.open( testProject.directory, ".env" );
+        builder.put( "API_TOKEN", null );
+        builder.put( "NAME", "app" );
+        builder.flush();
+        builder.flush();
+        testProject.assertProjectFile( ".env", "API_TOKEN=\nNAME=app\n" );
+        final EnvFileBuilder reopened = EnvFileBuilder.open( testProject.directory, ".env" );
+        reopened.put( "NAME", "lib" );
+        reopened.flush();
+        reopened.flush();
+        testProject.assertProjectFile( ".env", "API_TOKEN=\nNAME=lib\n" );
+    }
+
+    @Test
+    void testFlushDoesNotLeaveTemporaryFiles() throws IOException {
+        final TestProject testProject = new TestProject( "flush-temporary-test" );
+        final EnvFileBuilder builder = EnvFileBuilder.open( testProject.directory, ".env" );
+        builder.put( "A", 1 );
+        builder.flush();
+        builder.put( "A", 2 );
+        builder.flush();
+        assertArrayEquals( new String[]{ ".env" }, testProject.directory.list() );
+        testProject.assertProjectFile( ".env", "A=2\n" );
+    }
+
+    @Test
+    void testFlushWithError() throws IOException {
+        final File tempDirectory = Files.createTempDirectory( "flush-error-test" ).toFile();
+        final EnvFileBuilder builder = EnvFileBuilder.open( tempDirectory, ".env" );
+        builder.put( "HELLO", "WORLD" );
+        assertTrue( tempDirectory.setWritable( false ), "Cannot set read-only dir" );
+        assertThrows(
+                RuntimeException.class,
+                builder::flush
+        );
+    }
+}
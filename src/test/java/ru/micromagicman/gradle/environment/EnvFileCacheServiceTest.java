@@ -0,0 +1,142 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.provider.Property;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EnvFileCacheServiceTest {
+
+    private TestProject testProject;
+    private EnvFileCacheService cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testProject = new TestProject( "env-file-cache-test" );
+        cache = cacheService( false );
+    }
+
+    @Test
+    void testLoadMissingFile() {
+        assertEquals( Collections.emptyMap(), cache.load( new File( testProject.directory, ".env" ) ) );
+        assertEquals( 0, cache.getHits() );
+        assertEquals( 0, cache.getMisses() );
+    }
+
+    @Test
+    void testLoadIsCached() throws IOException {
+        testProject.addFile( ".env", "A=1\n" );
+        final File file = new File( testProject.directory, ".env" );
+        final Map<String, String> first = cache.load( file );
+        final Map<String, String> second = cache.load( new File( testProject.directory, "./.env" ) );
+        assertEquals( Map.of( "A", "1" ), first );
+        assertSame( first, second );
+        assertEquals( 1, cache.getHits() );
+        assertEquals( 1, cache.getMisses() );
+    }
+
+    @Test
+    void testLoadReparsesChangedFile() throws IOException {
+        testProject.addFile( ".env", "A=1\n" );
+        final File file = new File( testProject.directory, ".env" );
+        cache.load( file );
+        testProject.addFile( ".env", "A=1\nB=2\n" );
+        assertTrue( file.setLastModified( file.lastModified() + 2000 ), "Cannot update modification time" );
+        assertEquals( Map.of( "A", "1", "B", "2" ), cache.load( file ) );
+        assertEquals( 0, cache.getHits() );
+        assertEquals( 2, cache.getMisses() );
+    }
+
+    @Test
+    void testLoadFromDaemonCache() throws IOException {
+        testProject.addFile( ".env", "A=1\n" );
+        final File file = new File( testProject.directory, ".env" );
+        final EnvFileCacheService firstBuild = cacheService( true );
+        final Map<String, String> first = firstBuild.load( file );
+        firstBuild.close();
+        final EnvFileCacheService secondBuild = cacheService( true );
+        assertSame( first, secondBuild.load( file ) );
+        assertEquals( 1, secondBuild.getHits() );
+        assertEquals( 0, secondBuild.getMisses() );
+        assertEquals( Collections.emptyMap(), secondBuild.load( new File( testProject.directory, ".env.local" ) ) );
+        assertEquals( 1, secondBuild.getMisses() );
+    }
+
+    @Test
+    void testPrewarm() throws IOException {
+        final List<File> files = new ArrayList<>();
+        for ( int index = 0; index < 32; index++ ) {
+            testProject.addFile( "project" + index + "/.env", "INDEX=" + index + "\n" );
+            files.add( new File( testProject.directory, "project" + index + "/.env" ) );
+        }
+        files.add( new File( testProject.directory, "missing/.env" ) );
+        cache.prewarm( files );
+        assertEquals( 32, cache.getMisses() );
+        assertEquals( Map.of( "INDEX", "7" ), cache.load( files.get( 7 ) ) );
+        assertEquals( 1, cache.getHits() );
+        assertEquals( 32, cache.getMisses() );
+    }
+
+    @Test
+    void testProjectsShareKeysAndValues() throws IOException {
+        testProject.addFile( "first/.env", "HOST=localhost\nPORT=5432\n" );
+        testProject.addFile( "second/.env", "HOST=localhost\nPORT=5433\n" );
+        final Map<String, String> first = cache.load( new File( testProject.directory, "first/.env" ) );
+        final Map<String, String> second = cache.load( new File( testProject.directory, "second/.env" ) );
+        assertTrue( ( (EnvSnapshot) first ).sharesKeysWith( (EnvSnapshot) second ) );
+        assertSame( first.get( "HOST" ), second.get( "HOST" ) );
+        assertEquals( "5433", second.get( "PORT" ) );
+    }
+
+    @Test
+    void testLoadReferenceIsCachedByContentHash() throws IOException {
+        testProject.addFile( "first.pem", "CERTIFICATE" );
+        testProject.addFile( "second.pem", "CERTIFICATE" );
+        final File first = new File( testProject.directory, "first.pem" );
+        final String content = cache.loadReference( first );
+        assertEquals( "CERTIFICATE", content );
+        assertSame( content, cache.loadReference( new File( testProject.directory, "second.pem" ) ) );
+        testProject.addFile( "first.pem", "ANOTHER CERTIFICATE" );
+        assertTrue( first.setLastModified( first.lastModified() + 2000 ), "Cannot update modification time" );
+        assertEquals( "ANOTHER CERTIFICATE", cache.loadReference( first ) );
+    }
+
+    @Test
+    void testDecryptedPlaintextsAreClearedOnClose() throws GeneralSecurityException {
+        final SecretKey key = EnvFileCipher.readKey( "0123456789abcdef".getBytes( StandardCharsets.US_ASCII ) );
+        final ByteBuffer encrypted = ByteBuffer.wrap( EnvFileCipher.encrypt( "A=1\n".getBytes( StandardCharsets.UTF_8 ), key ) );
+        DecryptionCache.INSTANCE.read( encrypted, key, EnvFileParser::parse );
+        cacheService( true ).close();
+        assertTrue( DecryptionCache.INSTANCE.size() > 0 );
+        cache.close();
+        assertEquals( 0, DecryptionCache.INSTANCE.size() );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static EnvFileCacheService cacheService( final boolean daemonCache ) {
+        final Property<Boolean> daemonCacheProperty = mock( Property.class );
+        when( daemonCacheProperty.getOrElse( false ) ).thenReturn( daemonCache );
+        return new EnvFileCacheService() {
+            @Override
+            public Parameters getParameters() {
+                return () -> daemonCacheProperty;
+            }
+        };
+    }
+}
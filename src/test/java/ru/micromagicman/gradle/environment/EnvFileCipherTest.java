@@ -0,0 +1,75 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvFileCipherTest {
+
+    private static final byte[] RAW_KEY = rawKey();
+
+    @Test
+    void testRoundTrip() throws GeneralSecurityException {
+        final SecretKey key = EnvFileCipher.readKey( RAW_KEY );
+        final byte[] plaintext = "A=1\nB=2\n".getBytes( StandardCharsets.UTF_8 );
+        final byte[] encrypted = EnvFileCipher.encrypt( plaintext, key );
+        final ByteBuffer decrypted = EnvFileCipher.decrypt( ByteBuffer.wrap( encrypted ), key );
+        assertTrue( decrypted.isDirect() );
+        final byte[] result = new byte[decrypted.remaining()];
+        decrypted.get( result );
+        assertArrayEquals( plaintext, result );
+    }
+
+    @Test
+    void testReadKey() throws GeneralSecurityException {
+        final String encoded = Base64.getEncoder().encodeToString( RAW_KEY ) + "\n";
+        assertArrayEquals( RAW_KEY, EnvFileCipher.readKey( encoded.getBytes( StandardCharsets.US_ASCII ) ).getEncoded() );
+        assertArrayEquals( RAW_KEY, EnvFileCipher.readKey( RAW_KEY ).getEncoded() );
+        assertThrows( GeneralSecurityException.class, () -> EnvFileCipher.readKey( new byte[7] ) );
+    }
+
+    @Test
+    void testTextKeyIsDecodedAsBase64() throws GeneralSecurityException {
+        final byte[] text = "0123456789abcdef0123456789abcdef".getBytes( StandardCharsets.US_ASCII );
+        assertEquals( 24, EnvFileCipher.readKey( text ).getEncoded().length );
+    }
+
+    @Test
+    void testTamperedContentIsRejected() throws GeneralSecurityException {
+        final SecretKey key = EnvFileCipher.readKey( RAW_KEY );
+        final byte[] encrypted = EnvFileCipher.encrypt( "A=1\n".getBytes( StandardCharsets.UTF_8 ), key );
+        encrypted[encrypted.length - 1] ^= 1;
+        assertThrows( GeneralSecurityException.class, () -> EnvFileCipher.decrypt( ByteBuffer.wrap( encrypted ), key ) );
+        assertThrows( GeneralSecurityException.class, () -> EnvFileCipher.decrypt( ByteBuffer.allocate( 4 ), key ) );
+    }
+
+    @Test
+    void testFingerprint() throws GeneralSecurityException {
+        final SecretKey key = EnvFileCipher.readKey( RAW_KEY );
+        final ByteBuffer content = ByteBuffer.wrap( new byte[]{ 1, 2, 3 } );
+        assertEquals( EnvFileCipher.fingerprint( key, content ), EnvFileCipher.fingerprint( key, content ) );
+        assertEquals( 0, content.position() );
+        assertNotEquals(
+                EnvFileCipher.fingerprint( key, content ),
+                EnvFileCipher.fingerprint( key, ByteBuffer.wrap( new byte[]{ 1, 2, 4 } ) )
+        );
+    }
+
+    private static byte[] rawKey() {
+        final byte[] key = new byte[32];
+        for ( int index = 0; index < key.length; index++ ) {
+            key[index] = (byte) ( 0x80 + index );
+        }
+        return key;
+    }
+}
@@ -0,0 +1,155 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvFileParserTest {
+
+    @Test
+    void testValueContainingEqualsSign() {
+        assertEquals(
+                Map.of(
+                        "SECRET", "c2VjcmV0==",
+                        "DB_URL", "jdbc:postgresql://localhost:5432/app?user=admin"
+                ),
+                parse( """
+                        SECRET=c2VjcmV0==
+                        DB_URL=jdbc:postgresql://localhost:5432/app?user=admin
+                        """ )
+        );
+    }
+
+    @Test
+    void testWhitespacesAndExportPrefix() {
+        assertEquals(
+                Map.of(
+                        "A", "1",
+                        "B", "hello world",
+                        "export", "value",
+                        "exported", "2"
+                ),
+                parse( "  A = 1 \r\nexport B=  hello world\t\nexport=value\nexport   exported=2" )
+        );
+    }
+
+    @Test
+    void testComments() {
+        assertEquals(
+                Map.of(
+                        "A", "1",
+                        "B", "#not-a-comment",
+                        "C", "value#not-a-comment"
+                ),
+                parse( """
+                        # full line comment
+                          # indented comment
+                        A=1 # inline comment
+                        B=#not-a-comment
+                        C=value#not-a-comment
+                        """ )
+        );
+    }
+
+    @Test
+    void testQuotedValues() {
+        assertEquals(
+                Map.of(
+                        "SINGLE", "literal \\n ${VALUE}",
+                        "DOUBLE", "line\nnext \"quoted\" \\ \\d",
+                        "MULTILINE", "first\nsecond",
+                        "EMPTY", "",
+                        "UNTERMINATED", "\"value"
+                ),
+                parse( """
+                        SINGLE='literal \\n ${VALUE}' # comment
+                        DOUBLE="line\\nnext \\"quoted\\" \\\\ \\d"
+                        MULTILINE="first
+                        second"
+                        EMPTY=""
+                        UNTERMINATED="value
+                        """ )
+        );
+    }
+
+    @Test
+    void testSingleQuotedValuesAreLiteral() {
+        final EnvFileParser.Variables variables = EnvFileParser.parse( ByteBuffer.wrap(
+                "PATTERN='^a$'\nTEMPLATE=\"${PATTERN}\"\n".getBytes( StandardCharsets.UTF_8 )
+        ) );
+        assertEquals( "^a$", variables.get( "PATTERN" ) );
+        assertTrue( variables.isLiteral( "PATTERN" ) );
+        assertFalse( variables.isLiteral( "TEMPLATE" ) );
+        final EnvSnapshot snapshot = EnvSnapshot.of( variables, new EnvStringPool() );
+        assertEquals( "^a$", snapshot.get( "PATTERN" ) );
+        assertTrue( snapshot.isLiteral( "PATTERN" ) );
+        assertFalse( snapshot.isLiteral( "TEMPLATE" ) );
+    }
+
+    @Test
+    void testIgnoredLines() {
+        assertEquals(
+                Map.of( "A", "1" ),
+                parse( """
+
+                        without-equals-sign
+                        EMPTY=
+                        =value
+                        A=1
+                        """ )
+        );
+    }
+
+    @Test
+    void testByteOrderMarkAndUnicode() {
+        assertEquals(
+                Map.of( "GREETING", "\u043f\u0440\u0438\u0432\u0435\u0442" ),
+                parse( "\uFEFFGREETING=\u043f\u0440\u0438\u0432\u0435\u0442\n" )
+        );
+    }
+
+    @Test
+    void testDeclarationOrderIsPreserved() {
+        final Map<String, String> variables = parse( "C=3\nA=1\nB=2\nA=4\n" );
+        assertEquals( new LinkedHashMap<>( Map.of( "C", "3", "A", "4", "B", "2" ) ), variables );
+        assertEquals( "[C, A, B]", variables.keySet().toString() );
+    }
+
+    @Test
+    void testDirectBuffer() {
+        final byte[] content = "A=1\nB=\"2\\t\"\n".getBytes( StandardCharsets.UTF_8 );
+        final ByteBuffer buffer = ByteBuffer.allocateDirect( content.length ).put( content ).flip();
+        assertEquals( Map.of( "A", "1", "B", "2\t" ), EnvFileParser.parse( buffer ) );
+    }
+
+    @Test
+    void testMemoryMappedFile() throws IOException {
+        final TestProject testProject = new TestProject( "env-file-parser-test" );
+        final StringBuilder content = new StringBuilder();
+        int entries = 0;
+        while ( content.length() < EnvFileParser.MEMORY_MAPPING_THRESHOLD ) {
+            content.append( "VARIABLE_" ).append( entries ).append( "=value=" ).append( entries ).append( '\n' );
+            entries++;
+        }
+        testProject.addFile( ".env", content.toString() );
+        final File file = new File( testProject.directory, ".env" );
+        assertTrue( file.length() >= EnvFileParser.MEMORY_MAPPING_THRESHOLD );
+        final Map<String, String> variables = EnvFileParser.parse( file.toPath() );
+        assertEquals( entries, variables.size() );
+        assertEquals( "value=0", variables.get( "VARIABLE_0" ) );
+        assertEquals( "value=" + ( entries - 1 ), variables.get( "VARIABLE_" + ( entries - 1 ) ) );
+    }
+
+    private static Map<String, String> parse( final String content ) {
+        return EnvFileParser.parse( ByteBuffer.wrap( content.getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+}
@@ -0,0 +1,81 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvFileReferenceTest {
+
+    private TestProject testProject;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testProject = new TestProject( "env-file-reference-test" );
+    }
+
+    @Test
+    void testIsReference() {
+        assertTrue( EnvFileReference.isReference( "@file:server.pem" ) );
+        assertFalse( EnvFileReference.isReference( "@file:" ) );
+        assertFalse( EnvFileReference.isReference( "file:server.pem" ) );
+        assertFalse( EnvFileReference.isReference( " @file:server.pem" ) );
+    }
+
+    @Test
+    void testFileIsResolvedAgainstBaseDirectory() {
+        final File absolute = new File( testProject.directory, "server.pem" ).getAbsoluteFile();
+        assertEquals( absolute, EnvFileReference.file( "@file:" + absolute, new File( "elsewhere" ) ) );
+        assertEquals(
+                new File( testProject.directory, "certs/server.pem" ),
+                EnvFileReference.file( "@file:certs/server.pem", testProject.directory )
+        );
+        assertEquals(
+                List.of( new File( testProject.directory, "server.pem" ) ),
+                EnvFileReference.files( Map.of( "A", "1", "B", "@file:server.pem" ), testProject.directory )
+        );
+    }
+
+    @Test
+    void testResolveReadsOnlyReferencedFiles() throws IOException {
+        testProject.addFile( "server.pem", "CERTIFICATE" );
+        final List<File> read = new ArrayList<>();
+        final Map<String, String> resolved = EnvFileReference.resolve(
+                Map.of( "HOST", "localhost", "CERTIFICATE", "@file:server.pem" ),
+                testProject.directory,
+                file -> {
+                    read.add( file );
+                    return "content of " + file.getName();
+                }
+        );
+        assertEquals( Map.of( "HOST", "localhost", "CERTIFICATE", "content of server.pem" ), resolved );
+        assertEquals( List.of( new File( testProject.directory, "server.pem" ) ), read );
+    }
+
+    @Test
+    void testResolveWithoutReferences() {
+        final Map<String, String> variables = Map.of( "HOST", "localhost" );
+        assertSame( variables, EnvFileReference.resolve( variables, testProject.directory, file -> {
+            throw new AssertionError( "No file must be read" );
+        } ) );
+    }
+
+    @Test
+    void testResolveMissingFile() {
+        final RuntimeException exception = assertThrows(
+                RuntimeException.class,
+                () -> EnvFileReference.resolve( Map.of( "KEY", "@file:missing.json" ), testProject.directory, File::getName )
+        );
+        assertTrue( exception.getMessage().contains( "referenced by KEY is not found" ), exception.getMessage() );
+    }
+}
@@ -0,0 +1,151 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvInterpolatorTest {
+
+    private static final String UNDEFINED = "ENVIRONMENT_PLUGIN_UNDEFINED_VARIABLE";
+
+    @Test
+    void testResolveReferences() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of(
+                "DB_HOST", "localhost",
+                "DB_PORT", "5432",
+                "DB_URL", "jdbc:postgresql://${DB_HOST}:${DB_PORT}/app"
+        ) );
+        assertEquals( "jdbc:postgresql://localhost:5432/app", overlay.resolve( "DB_URL" ) );
+        assertEquals( "localhost", overlay.resolve( "DB_HOST" ) );
+        assertNull( overlay.resolve( "MISSING" ) );
+    }
+
+    @Test
+    void testResolveDefaults() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of(
+                "EMPTY", "",
+                "PORT", "${" + UNDEFINED + ":-8080}",
+                "EMPTY_PORT", "${EMPTY:-8081}",
+                "NESTED", "${" + UNDEFINED + ":-${PORT}}",
+                "UNDEFINED", "[${" + UNDEFINED + "}]"
+        ) );
+        assertEquals( "8080", overlay.resolve( "PORT" ) );
+        assertEquals( "8081", overlay.resolve( "EMPTY_PORT" ) );
+        assertEquals( "8080", overlay.resolve( "NESTED" ) );
+        assertEquals( "[]", overlay.resolve( "UNDEFINED" ) );
+    }
+
+    @Test
+    void testResolveFromProcessEnvironment() {
+        final String path = System.getenv( "PATH" );
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of( "EXTENDED_PATH", "/opt/bin:${PATH}" ) );
+        assertEquals( "/opt/bin:" + ( null != path ? path : "" ), overlay.resolve( "EXTENDED_PATH" ) );
+    }
+
+    @Test
+    void testSingleQuotedValuesAreLiteral() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( EnvFile.parseEnvironment( """
+                A=1
+                SINGLE='${A} \\${A} $HOME'
+                DOUBLE="${A}"
+                """.getBytes( EnvFileParser.CHARSET ) ) );
+        assertEquals( "${A} \\${A} $HOME", overlay.resolve( "SINGLE" ) );
+        assertEquals( "1", overlay.resolve( "DOUBLE" ) );
+    }
+
+    @Test
+    void testEscapedReference() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of(
+                "A", "1",
+                "LITERAL", "\\${A} is ${A}",
+                "UNCLOSED", "${A"
+        ) );
+        assertEquals( "${A} is 1", overlay.resolve( "LITERAL" ) );
+        assertEquals( "${A", overlay.resolve( "UNCLOSED" ) );
+    }
+
+    @Test
+    void testResolveDeepChain() {
+        final int depth = 100_000;
+        final Map<String, String> variables = new HashMap<>();
+        variables.put( "V0", "end" );
+        for ( int index = 1; index < depth; index++ ) {
+            variables.put( "V" + index, "${V" + ( index - 1 ) + "}" );
+        }
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( variables );
+        assertEquals( "end", overlay.resolve( "V" + ( depth - 1 ) ) );
+        assertEquals( "end", overlay.resolve( "V" + ( depth / 2 ) ) );
+    }
+
+    @Test
+    void testCyclicReference() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of(
+                "START", "${A}",
+                "A", "${B}",
+                "B", "${C}",
+                "C", "x${A}"
+        ) );
+        final IllegalStateException exception = assertThrows(
+                IllegalStateException.class,
+                () -> overlay.resolve( "START" )
+        );
+        assertEquals( "Cyclic reference in environment variables: A -> B -> C -> A", exception.getMessage() );
+    }
+
+    @Test
+    void testSelfReference() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of( "A", "${A:-default}" ) );
+        assertThrows( IllegalStateException.class, () -> overlay.resolve( "A" ) );
+    }
+
+    @Test
+    void testValuesAreResolvedOnce() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of( "A", "1", "B", "${A}${A}" ) );
+        assertSame( overlay.resolve( "B" ), overlay.resolve( "B" ) );
+    }
+
+    @Test
+    void testTaskOverlayReusesParentValues() {
+        final EnvOverlay project = EnvOverlay.EMPTY.with( Map.of( "HOST", "localhost", "URL", "http://${HOST}" ) );
+        final String url = project.resolve( "URL" );
+        assertSame( url, project.with( Map.of( "OTHER", "1" ) ).resolve( "URL" ) );
+        final EnvOverlay overridden = project.with( Map.of( "HOST", "remote" ) );
+        assertEquals( "http://remote", overridden.resolve( "URL" ) );
+        assertNotSame( url, overridden.resolve( "URL" ) );
+        assertEquals( "http://localhost", project.resolve( "URL" ) );
+    }
+
+    @Test
+    void testForkIndexIsKeptUntilApplied() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of(
+                "PORT", "543${fork.index}",
+                "URL", "jdbc://localhost:${PORT}/test_${fork.index}",
+                "HOST", "localhost"
+        ) );
+        final Map<String, String> resolved = overlay.resolved();
+        assertEquals( "jdbc://localhost:543${fork.index}/test_${fork.index}", resolved.get( "URL" ) );
+        assertTrue( EnvInterpolator.referencesForkIndex( resolved ) );
+        final Map<String, String> applied = EnvInterpolator.withForkIndex( resolved, 2 );
+        assertEquals( Map.of( "PORT", "5432", "URL", "jdbc://localhost:5432/test_2", "HOST", "localhost" ), applied );
+        final Map<String, String> plain = Map.of( "HOST", "localhost" );
+        assertSame( plain, EnvInterpolator.withForkIndex( plain, 2 ) );
+    }
+
+    @Test
+    void testCollectReferences() {
+        final Set<String> names = new LinkedHashSet<>();
+        EnvInterpolator.collectReferences( "${A}:${B:-${C}} \\${D} ${E", names );
+        assertEquals( Set.of( "A", "B", "C" ), names );
+        assertTrue( EnvInterpolator.isTemplate( "${A}" ) );
+    }
+}
@@ -0,0 +1,111 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.tasks.JavaExec;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class EnvOverlayTest {
+
+    @Test
+    void testLayerFileNames() {
+        assertEquals( List.of( ".env", ".env.enc", ".env.local" ), EnvOverlay.layerFileNames( null ) );
+        assertEquals( List.of( ".env", ".env.enc", ".env.local" ), EnvOverlay.layerFileNames( " " ) );
+        assertEquals( List.of( ".env", ".env.enc", ".env.local", ".env.ci" ), EnvOverlay.layerFileNames( "ci" ) );
+    }
+
+    @Test
+    void testUpperLayerWins() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY
+                .with( Map.of( "A", "base", "B", "base" ) )
+                .with( Map.of( "B", "local", "C", "local" ) );
+        assertEquals( "base", overlay.get( "A" ) );
+        assertEquals( "local", overlay.get( "B" ) );
+        assertEquals( "local", overlay.get( "C" ) );
+        assertNull( overlay.get( "D" ) );
+        assertEquals( Map.of( "A", "base", "B", "local", "C", "local" ), overlay.asMap() );
+    }
+
+    @Test
+    void testExternalNames() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY
+                .with( Map.of( "URL", "${HOST:-${DEFAULT_HOST}}:${PORT}", "LOG", "${HOME}/${fork.index}.log" ) )
+                .with( Map.of( "PORT", "", "PRICE", "\\${FREE}" ) );
+        assertEquals( Set.of( "DEFAULT_HOST", "HOME", "HOST" ), overlay.externalNames() );
+    }
+
+    @Test
+    void testEmptyLayerIsSkipped() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of( "A", "1" ) );
+        assertSame( overlay, overlay.with( Map.of() ) );
+        assertSame( overlay.asMap(), overlay.asMap() );
+    }
+
+    @Test
+    void testLayersAreShared() {
+        final EnvOverlay base = EnvOverlay.EMPTY.with( Map.of( "A", "base" ) );
+        final EnvOverlay first = base.with( Map.of( "A", "first" ) );
+        final EnvOverlay second = base.with( Map.of( "B", "second" ) );
+        assertEquals( Map.of( "A", "base" ), base.asMap() );
+        assertEquals( Map.of( "A", "first" ), first.asMap() );
+        assertEquals( Map.of( "A", "base", "B", "second" ), second.asMap() );
+    }
+
+    @Test
+    void testApplyForTaskWithSingleCall() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY
+                .with( Map.of( "A", "base", "B", "base" ) )
+                .with( Map.of( "A", "task" ) );
+        final JavaExec javaExecTask = mock( JavaExec.class );
+        assertEquals( 2, overlay.applyForTask( javaExecTask ) );
+        verify( javaExecTask ).environment( Map.of( "A", "task", "B", "base" ) );
+        verify( javaExecTask, never() ).environment( anyString(), any() );
+    }
+
+    @Test
+    void testApplyForTaskResolvesReferences() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY
+                .with( Map.of( "HOST", "localhost", "URL", "http://${HOST}" ) )
+                .with( Map.of( "HOST", "remote" ) );
+        final JavaExec javaExecTask = mock( JavaExec.class );
+        overlay.applyForTask( javaExecTask );
+        verify( javaExecTask ).environment( Map.of( "HOST", "remote", "URL", "http://remote" ) );
+    }
+
+    @Test
+    void testResolvedIsComputedOnce() {
+        final EnvOverlay plain = EnvOverlay.EMPTY.with( Map.of( "A", "1" ) );
+        assertSame( plain.asMap(), plain.resolved() );
+        final EnvOverlay interpolated = plain.with( Map.of( "B", "${A}" ) );
+        assertEquals( Map.of( "A", "1", "B", "1" ), interpolated.resolved() );
+        assertSame( interpolated.resolved(), interpolated.resolved() );
+    }
+
+    @Test
+    void testViewIsSharedByFilter() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of( "DB_HOST", "localhost", "DB_URL", "jdbc:${DB_HOST}", "AWS_REGION", "eu" ) );
+        final EnvironmentRule rule = new EnvironmentRule();
+        rule.tasks( "test" );
+        rule.keys( "DB_URL" );
+        final EnvironmentFilter filter = EnvironmentFilter.compile( List.of( rule ), List.of() );
+        final EnvOverlay.View view = overlay.view( filter.forTask( "test", JavaExec.class ) );
+        assertEquals( Map.of( "DB_URL", "jdbc:localhost" ), view.variables() );
+        assertSame( view, overlay.view( filter.forTask( "test", JavaExec.class ) ) );
+        assertSame( view.variables(), view.variables() );
+        assertEquals( EnvironmentFingerprint.of( view.variables() ), view.fingerprint() );
+        final EnvOverlay.View all = overlay.view( filter.forTask( "run", JavaExec.class ) );
+        assertSame( overlay.resolved(), all.variables() );
+        assertSame( overlay.fingerprint(), all.fingerprint() );
+    }
+}
@@ -0,0 +1,81 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvSchemaTest {
+
+    private static final EnvSchema SCHEMA = compile( """
+            # database
+            DB_HOST=string required min=1 max=8
+            DB_PORT=integer required min=1 max=65535
+            RATIO=number min=0 max=0.5
+            DEBUG=boolean
+            API_URL="string pattern=^https?://\\\\S+$"
+            """ );
+
+    @Test
+    void testValidEnvironment() {
+        assertEquals( 5, SCHEMA.size() );
+        assertTrue( SCHEMA.validate( Map.of( "DB_HOST", "db", "DB_PORT", "5432" ) ).isEmpty() );
+        assertTrue( SCHEMA.validate( Map.of(
+                "DB_HOST", "db",
+                "DB_PORT", "1",
+                "RATIO", "0.25",
+                "DEBUG", "TRUE",
+                "API_URL", "https://example.com"
+        ) ).isEmpty() );
+    }
+
+    @Test
+    void testViolations() {
+        assertEquals(
+                List.of( "DB_HOST is required", "DB_PORT is required" ),
+                SCHEMA.validate( Map.of( "DB_HOST", "" ) )
+        );
+        assertEquals(
+                List.of(
+                        "DB_HOST length must be at most 8",
+                        "DB_PORT must be an integer",
+                        "RATIO must be at most 0.5",
+                        "DEBUG must be a boolean",
+                        "API_URL must match ^https?://\\S+$"
+                ),
+                SCHEMA.validate( Map.of(
+                        "DB_HOST", "database-host",
+                        "DB_PORT", "5432.0",
+                        "RATIO", "1",
+                        "DEBUG", "yes",
+                        "API_URL", "ftp://example.com"
+                ) )
+        );
+        assertEquals( List.of( "DB_PORT must be at least 1" ), SCHEMA.validate( Map.of( "DB_HOST", "db", "DB_PORT", "0" ) ) );
+    }
+
+    @Test
+    void testViolationsDoNotContainValues() {
+        final List<String> violations = SCHEMA.validate( Map.of( "DB_HOST", "db", "DB_PORT", "s3cr3t" ) );
+        assertEquals( 1, violations.size() );
+        assertFalse( violations.get( 0 ).contains( "s3cr3t" ) );
+    }
+
+    @Test
+    void testInvalidSchema() {
+        assertThrows( IllegalArgumentException.class, () -> compile( "A=uuid\n" ) );
+        assertThrows( IllegalArgumentException.class, () -> compile( "A=string mandatory\n" ) );
+        assertThrows( IllegalArgumentException.class, () -> compile( "A=integer min=one\n" ) );
+        assertThrows( IllegalArgumentException.class, () -> compile( "A='string pattern=('\n" ) );
+    }
+
+    private static EnvSchema compile( final String content ) {
+        return EnvSchema.compile( content.getBytes( StandardCharsets.UTF_8 ) );
+    }
+}
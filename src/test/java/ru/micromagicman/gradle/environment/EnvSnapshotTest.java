@@ -0,0 +1,91 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvSnapshotTest {
+
+    @Test
+    void testSnapshotKeepsDeclarationOrder() {
+        final Map<String, String> variables = new LinkedHashMap<>();
+        for ( int index = 100; index > 0; index-- ) {
+            variables.put( "KEY_" + index, "value " + index );
+        }
+        final EnvSnapshot snapshot = EnvSnapshot.of( variables, new EnvStringPool() );
+        assertEquals( variables, snapshot );
+        assertEquals( variables.hashCode(), snapshot.hashCode() );
+        assertEquals( new ArrayList<>( variables.keySet() ), new ArrayList<>( snapshot.keySet() ) );
+        final List<String> keys = new ArrayList<>();
+        snapshot.forEach( ( key, value ) -> keys.add( key ) );
+        assertEquals( new ArrayList<>( variables.keySet() ), keys );
+        assertEquals( "value 42", snapshot.get( "KEY_42" ) );
+        assertTrue( snapshot.containsKey( "KEY_1" ) );
+        assertFalse( snapshot.containsKey( "KEY_0" ) );
+        assertNull( snapshot.get( "KEY_0" ) );
+        assertNull( snapshot.get( 42 ) );
+    }
+
+    @Test
+    void testSnapshotIsImmutable() {
+        final EnvSnapshot snapshot = EnvSnapshot.of( Map.of( "A", "1" ), new EnvStringPool() );
+        assertThrows( UnsupportedOperationException.class, () -> snapshot.put( "B", "2" ) );
+        assertThrows( UnsupportedOperationException.class, () -> snapshot.remove( "A" ) );
+        assertThrows( UnsupportedOperationException.class, () -> snapshot.entrySet().iterator().next().setValue( "2" ) );
+        assertThrows( UnsupportedOperationException.class, snapshot::clear );
+    }
+
+    @Test
+    void testEmptySnapshot() {
+        final EnvSnapshot snapshot = EnvSnapshot.of( Map.of(), new EnvStringPool() );
+        assertTrue( snapshot.isEmpty() );
+        assertSame( snapshot, EnvSnapshot.copyOf( Map.of() ) );
+        assertNull( snapshot.get( "A" ) );
+    }
+
+    @Test
+    void testKeysAndValuesAreShared() {
+        final EnvStringPool pool = new EnvStringPool();
+        final EnvSnapshot first = EnvSnapshot.of( variables( "shared" ), pool );
+        final EnvSnapshot second = EnvSnapshot.of( variables( "shared" ), pool );
+        final EnvSnapshot other = EnvSnapshot.of( Map.of( "HOST", new String( "shared" ) ), pool );
+        assertTrue( first.sharesKeysWith( second ) );
+        assertFalse( first.sharesKeysWith( other ) );
+        assertSame( first.get( "HOST" ), second.get( "HOST" ) );
+        assertSame( first.get( "HOST" ), other.get( "HOST" ) );
+        assertSame( first.keySet().iterator().next(), second.keySet().iterator().next() );
+        assertEquals( 4, pool.size() );
+        assertEquals( 2, pool.tables() );
+    }
+
+    @Test
+    void testCopyOfSnapshotIsTheSnapshot() {
+        final EnvSnapshot snapshot = EnvSnapshot.of( Map.of( "A", "1" ), new EnvStringPool() );
+        assertSame( snapshot, EnvSnapshot.copyOf( snapshot ) );
+        assertEquals( Map.of( "A", "1", "B", "2" ), EnvSnapshot.copyOf( Map.of( "A", "1", "B", "2" ) ) );
+    }
+
+    @Test
+    void testNullValueIsRejected() {
+        final Map<String, String> variables = new LinkedHashMap<>();
+        variables.put( "A", null );
+        assertThrows( NullPointerException.class, () -> EnvSnapshot.of( variables, new EnvStringPool() ) );
+    }
+
+    private static Map<String, String> variables( final String host ) {
+        final Map<String, String> variables = new LinkedHashMap<>();
+        variables.put( new String( "HOST" ), new String( host ) );
+        variables.put( new String( "PORT" ), new String( "5432" ) );
+        return variables;
+    }
+}
@@ -15,9 +15,10 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -39,26 +40,10 @@ class EnvironmentFileTest {
         assertTrue( envFile.setReadable( false ), "Cannot set read = false flag for file" );
         assertThrows(
                 RuntimeException.class,
-                () -> new EnvFile( tempDirectory, ".env" )
+                () -> EnvFile.read( tempDirectory, ".env" )
         );
     }
 
-    @Test
-    void testPutError() {
-        final EnvFile envFile = new EnvFile( null, ".env" );
-        assertThrows(
-                NullPointerException.class,
-                () -> envFile.put( null, "value" )
-        );
-    }
-
-    @Test
-    void testPutOk() {
-        final EnvFile envFile = new EnvFile( null, ".env" );
-        envFile.put( "key", "value" );
-        assertEquals( Map.of( "key", "value" ), envFile.all() );
-    }
-
     @Test
     void testAll() {
         final EnvFile envFile = envFileFromResources( "sample1.env" );
@@ -83,8 +68,8 @@ class EnvironmentFileTest {
         final EnvFile envFile = envFileFromResources( "sample1.env" );
         final JavaExec javaExecTask = mock( JavaExec.class );
         envFile.applyForTask( javaExecTask );
-        verify( javaExecTask, times( envFile.all().size() ) )
-                .environment( anyString(), anyString() );
+        verify( javaExecTask ).environment( envFile.all() );
+        verify( javaExecTask, never() ).environment( anyString(), any() );
     }
 
     @Test
@@ -96,37 +81,16 @@ class EnvironmentFileTest {
     }
 
     @Test
-    void testFlushSuccess() throws IOException {
-        final TestProject testProject = new TestProject( "flush-test" );
-        final EnvFile envFile = new EnvFile( testProject.directory, ".env" );
-        envFile.put( "HELLO", "WORLD" );
-        envFile.put( "THIS_IS_TRUE", true );
-        envFile.put( "EMPTY", null );
-        envFile.flush();
-        testProject.assertProjectFile(
-                ".env",
-                """
-                        HELLO=WORLD
-                        THIS_IS_TRUE=true
-                        EMPTY=
-                        """
-        );
-    }
-
-    @Test
-    void testFlushWithError() throws IOException {
-        final File tempDirectory = Files.createTempDirectory( "flush-error-test" ).toFile();
-        final EnvFile envFile = new EnvFile( tempDirectory, ".env" );
-        envFile.put( "HELLO", "WORLD" );
-        assertTrue( tempDirectory.setWritable( false ), "Cannot set read-only dir" );
-        assertThrows(
-                RuntimeException.class,
-                envFile::flush
-        );
+    void testBuilderSnapshotIsNotChangedByBuilder() {
+        final EnvFileBuilder builder = EnvFileBuilder.create( new File( ".env" ) ).put( "A", 1 );
+        final EnvFile envFile = builder.build();
+        builder.put( "A", 2 ).put( "B", 3 );
+        assertEquals( Map.of( "A", "1" ), envFile.all() );
+        assertEquals( Map.of( "A", "2", "B", "3" ), builder.build().all() );
     }
 
     @NonNull
     private static EnvFile envFileFromResources( final String fileName ) {
-        return new EnvFile( new File( "src/test/resources" ), fileName );
+        return EnvFile.read( new File( "src/test/resources" ), fileName );
     }
 }
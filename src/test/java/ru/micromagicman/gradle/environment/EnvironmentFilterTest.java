@@ -0,0 +1,107 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.tasks.Exec;
+import org.gradle.api.tasks.JavaExec;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvironmentFilterTest {
+
+    @Test
+    void testWithoutRulesAllVariablesPass() {
+        final EnvironmentFilter.KeyFilter filter = EnvironmentFilter.NONE.forTask( "test", Exec.class );
+        assertSame( EnvironmentFilter.KeyFilter.ALL, filter );
+        assertTrue( filter.passesAll() );
+        assertTrue( filter.test( "ANY" ) );
+    }
+
+    @Test
+    void testIncludeRuleLimitsSelectedTasksOnly() {
+        final EnvironmentFilter filter = EnvironmentFilter.compile(
+                List.of( rule( rule -> {
+                    rule.tasks( "test", "integration*" );
+                    rule.keys( "DB_", "SPRING_" );
+                } ) ),
+                List.of()
+        );
+        final EnvironmentFilter.KeyFilter test = filter.forTask( "test", Exec.class );
+        assertTrue( test.test( "DB_HOST" ) );
+        assertTrue( test.test( "SPRING_PROFILE" ) );
+        assertFalse( test.test( "AWS_REGION" ) );
+        assertFalse( test.test( "DB" ) );
+        assertSame( test, filter.forTask( "integrationTest", Exec.class ) );
+        assertSame( EnvironmentFilter.KeyFilter.ALL, filter.forTask( "run", JavaExec.class ) );
+    }
+
+    @Test
+    void testRuleSelectsTasksByType() {
+        final EnvironmentFilter filter = EnvironmentFilter.compile(
+                List.of( rule( rule -> {
+                    rule.types( JavaExec.class );
+                    rule.keys( "APP_" );
+                } ) ),
+                List.of( rule( rule -> rule.tasks( "lint?" ) ) )
+        );
+        assertFalse( filter.forTask( "run", JavaExec.class ).test( "DB_HOST" ) );
+        assertTrue( filter.forTask( "run", JavaExec.class ).test( "APP_NAME" ) );
+        assertFalse( filter.forTask( "lint1", Exec.class ).test( "APP_NAME" ) );
+        assertTrue( filter.forTask( "lint12", Exec.class ).passesAll() );
+    }
+
+    @Test
+    void testExcludeRuleWins() {
+        final EnvironmentFilter filter = EnvironmentFilter.compile(
+                List.of( rule( rule -> rule.keys( "DB_" ) ) ),
+                List.of( rule( rule -> {
+                    rule.tasks( "test" );
+                    rule.keys( "DB_PASSWORD" );
+                } ) )
+        );
+        final EnvironmentFilter.KeyFilter test = filter.forTask( "test", Exec.class );
+        assertTrue( test.test( "DB_HOST" ) );
+        assertFalse( test.test( "DB_PASSWORD" ) );
+        assertTrue( filter.forTask( "run", JavaExec.class ).test( "DB_PASSWORD" ) );
+        assertNotSame( test, filter.forTask( "run", JavaExec.class ) );
+    }
+
+    @Test
+    void testAllowedKeysPassAnyway() {
+        final EnvironmentFilter filter = EnvironmentFilter.compile( List.of(), List.of( rule( rule -> {
+        } ) ) );
+        final EnvironmentFilter.KeyFilter test = filter.forTask( "test", Exec.class );
+        assertFalse( test.test( "DB_PORT" ) );
+        assertTrue( test.allowing( Set.of( "DB_PORT" ) ).test( "DB_PORT" ) );
+        assertSame( test, test.allowing( Set.of() ) );
+    }
+
+    @Test
+    void testPrefixMatcher() {
+        final EnvironmentFilter.PrefixMatcher matcher = EnvironmentFilter.PrefixMatcher.compile(
+                List.of( "AB_X", "A", "C_", "D" )
+        );
+        assertTrue( matcher.matches( "AB_Y" ) );
+        assertTrue( matcher.matches( "A" ) );
+        assertTrue( matcher.matches( "C_1" ) );
+        assertFalse( matcher.matches( "C" ) );
+        assertFalse( matcher.matches( "B" ) );
+        assertTrue( matcher.matches( "DZ" ) );
+        assertFalse( matcher.matches( "" ) );
+        assertSame( EnvironmentFilter.PrefixMatcher.ALL, EnvironmentFilter.PrefixMatcher.compile( List.of( "A", "" ) ) );
+        assertSame( EnvironmentFilter.PrefixMatcher.NONE, EnvironmentFilter.PrefixMatcher.compile( List.of() ) );
+        assertFalse( EnvironmentFilter.PrefixMatcher.NONE.matches( "A" ) );
+    }
+
+    private static EnvironmentRule rule( final Consumer<EnvironmentRule> configuration ) {
+        final EnvironmentRule rule = new EnvironmentRule();
+        configuration.accept( rule );
+        return rule;
+    }
+}
@@ -0,0 +1,49 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class EnvironmentFingerprintTest {
+
+    @Test
+    void testFingerprintDoesNotDependOnOrder() {
+        final Map<String, String> first = new LinkedHashMap<>();
+        first.put( "A", "1" );
+        first.put( "B", "2" );
+        final Map<String, String> second = new LinkedHashMap<>();
+        second.put( "B", "2" );
+        second.put( "A", "1" );
+        assertEquals( EnvironmentFingerprint.of( first ), EnvironmentFingerprint.of( second ) );
+        assertEquals( 64, EnvironmentFingerprint.of( first ).length() );
+    }
+
+    @Test
+    void testFingerprintChangesWithEnvironment() {
+        final String fingerprint = EnvironmentFingerprint.of( Map.of( "A", "1", "B", "2" ) );
+        assertNotEquals( fingerprint, EnvironmentFingerprint.of( Map.of( "A", "1", "B", "3" ) ) );
+        assertNotEquals( fingerprint, EnvironmentFingerprint.of( Map.of( "A", "1" ) ) );
+        assertNotEquals(
+                EnvironmentFingerprint.of( Map.of( "AB", "" ) ),
+                EnvironmentFingerprint.of( Map.of( "A", "B" ) )
+        );
+    }
+
+    @Test
+    void testFingerprintDoesNotContainValues() {
+        assertFalse( EnvironmentFingerprint.of( Map.of( "API_TOKEN", "secret" ) ).contains( "secret" ) );
+    }
+
+    @Test
+    void testOverlayFingerprintIsComputedOnce() {
+        final EnvOverlay overlay = EnvOverlay.EMPTY.with( Map.of( "HOST", "localhost", "URL", "http://${HOST}" ) );
+        assertEquals( EnvironmentFingerprint.of( Map.of( "HOST", "localhost", "URL", "http://localhost" ) ), overlay.fingerprint() );
+        assertSame( overlay.fingerprint(), overlay.fingerprint() );
+    }
+}
@@ -0,0 +1,223 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Scale suite comparing builds of N projects with M forkable tasks and K variables each with and without
+ * the plugin. Thresholds are tracked in {@code scale-thresholds.properties} and may be overridden
+ * by {@code scale.<name>} system properties.
+ * <p>
+ * The suite is excluded from the {@code test} task and runs with {@code ./gradlew scaleTest}.
+ */
+@Tag( "scale" )
+class EnvironmentPluginScaleTest {
+
+    private static final Pattern HEAP_PATTERN = Pattern.compile( "HEAP_USED=(\\d+)" );
+    private static final double MEGABYTE = 1024 * 1024;
+    private static final Extractor DURATION = ( result, millis ) -> millis;
+    private static final String NO_OP_COMMAND = System.getProperty( "os.name" ).toLowerCase( Locale.ROOT ).startsWith( "windows" )
+            ? "'cmd', '/c', 'exit', '0'"
+            : "'true'";
+
+    @TempDir
+    static File withoutPluginTestKit;
+    @TempDir
+    static File withPluginTestKit;
+
+    private static Properties thresholds;
+    private static int projects;
+    private static int tasksPerProject;
+    private static int variables;
+
+    @BeforeAll
+    static void loadThresholds() throws IOException {
+        thresholds = new Properties();
+        try ( final InputStream input = EnvironmentPluginScaleTest.class.getResourceAsStream( "/scale-thresholds.properties" ) ) {
+            thresholds.load( input );
+        }
+        projects = (int) threshold( "projects" );
+        tasksPerProject = (int) threshold( "tasksPerProject" );
+        variables = (int) threshold( "variables" );
+    }
+
+    @Test
+    void testConfigurationOverhead() throws IOException {
+        final List<String> arguments = new ArrayList<>( taskNames() );
+        arguments.add( "--dry-run" );
+        final double[] means = compare( arguments, DURATION );
+        assertOverhead( "configuration", means[0], means[1], threshold( "configurationOverheadRatio" ) );
+    }
+
+    @Test
+    void testExecutionOverhead() throws IOException {
+        final List<String> arguments = taskNames();
+        final double[] means = compare( arguments, DURATION );
+        assertOverhead( "execution", means[0], means[1], threshold( "executionOverheadRatio" ) );
+    }
+
+    @Test
+    void testHeapOverhead() throws IOException {
+        final List<String> arguments = new ArrayList<>( taskNames() );
+        arguments.add( "heapUsage" );
+        final double[] means = compare( arguments, ( result, millis ) -> {
+            final Matcher matcher = HEAP_PATTERN.matcher( result.getOutput() );
+            assertTrue( matcher.find(), result.getOutput() );
+            return Long.parseLong( matcher.group( 1 ) ) / MEGABYTE;
+        } );
+        final double overhead = means[1] - means[0];
+        report( "heap", means[0], means[1], "MB" );
+        assertTrue(
+                overhead <= threshold( "heapOverheadMegabytes" ),
+                String.format( Locale.ROOT, "Heap overhead %.1f MB exceeds %s MB", overhead, thresholds.get( "heapOverheadMegabytes" ) )
+        );
+    }
+
+    private static GradleRunner runner( final boolean withPlugin ) throws IOException {
+        final TestProject testProject = new TestProject( "gradle-environment-plugin-scale-test" );
+        final StringBuilder settings = new StringBuilder( "rootProject.name = 'scale'\n" );
+        for ( int project = 0; project < projects; project++ ) {
+            settings.append( "include 'project" ).append( project ).append( "'\n" );
+            testProject.addFile( "project" + project + "/.env", environment( project ) );
+        }
+        testProject.addFile( "settings.gradle", settings.toString() );
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment' apply false
+                        }
+                        subprojects {
+                            if (%s) {
+                                apply plugin: 'ru.micromagicman.environment'
+                            }
+                            for (int index = 0; index < %d; index++) {
+                                tasks.register("fork$index", Exec) {
+                                    commandLine %s
+                                }
+                            }
+                        }
+                        tasks.register('heapUsage') {
+                            doLast {
+                                System.gc()
+                                def runtime = Runtime.runtime
+                                println "HEAP_USED=${runtime.totalMemory() - runtime.freeMemory()}"
+                            }
+                        }
+                        """.formatted( withPlugin, tasksPerProject, NO_OP_COMMAND )
+        );
+        return GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withTestKitDir( withPlugin ? withPluginTestKit : withoutPluginTestKit )
+                .withPluginClasspath();
+    }
+
+    private static String environment( final int project ) {
+        final StringBuilder content = new StringBuilder();
+        for ( int index = 0; index < variables; index++ ) {
+            final String name = 0 == index % 10 ? "SECRET_TOKEN_" + index : "VARIABLE_" + index;
+            content.append( name ).append( "=value-" ).append( project ).append( '-' ).append( index ).append( '\n' );
+        }
+        return content.toString();
+    }
+
+    private static List<String> taskNames() {
+        final List<String> names = new ArrayList<>( tasksPerProject );
+        for ( int index = 0; index < tasksPerProject; index++ ) {
+            names.add( "fork" + index );
+        }
+        return names;
+    }
+
+    /**
+     * Runs warm-up builds of both variants and then alternates measured builds, so machine noise affects both
+     * variants alike. Every variant has its own TestKit directory created once for the suite and therefore its own
+     * daemon reused by all tests, so neither variant runs on a daemon warmed up by the other one and the heap
+     * of a daemon holds a single variant.
+     *
+     * @return {@link #trimmedMean trimmed means} of values extracted from measured builds without and with the plugin
+     */
+    private static double[] compare( final List<String> arguments, final Extractor extractor ) throws IOException {
+        final GradleRunner[] runners = { runner( false ).withArguments( arguments ), runner( true ).withArguments( arguments ) };
+        for ( int warmup = 0; warmup < (int) threshold( "warmups" ); warmup++ ) {
+            for ( final GradleRunner runner : runners ) {
+                runner.build();
+            }
+        }
+        final double[][] values = new double[runners.length][(int) threshold( "iterations" )];
+        for ( int iteration = 0; iteration < values[0].length; iteration++ ) {
+            for ( int variant = 0; variant < runners.length; variant++ ) {
+                final long start = System.nanoTime();
+                final BuildResult result = runners[variant].build();
+                values[variant][iteration] = extractor.extract( result, ( System.nanoTime() - start ) / 1_000_000.0 );
+            }
+        }
+        return new double[]{ trimmedMean( values[0] ), trimmedMean( values[1] ) };
+    }
+
+    /**
+     * Returns the mean of values without the lowest and the highest quarter of them, which is less sensitive
+     * to outliers like builds interrupted by garbage collection than the mean and less noisy than the median.
+     */
+    private static double trimmedMean( final double[] values ) {
+        final double[] sorted = values.clone();
+        Arrays.sort( sorted );
+        final int trimmed = sorted.length / 4;
+        double sum = 0;
+        for ( int index = trimmed; index < sorted.length - trimmed; index++ ) {
+            sum += sorted[index];
+        }
+        return sum / ( sorted.length - 2 * trimmed );
+    }
+
+    private static void assertOverhead(
+            final String measurement,
+            final double withoutPlugin,
+            final double withPlugin,
+            final double maxRatio ) {
+        report( measurement, withoutPlugin, withPlugin, "ms" );
+        final double ratio = withPlugin / withoutPlugin;
+        assertTrue(
+                ratio <= maxRatio,
+                String.format( Locale.ROOT, "%s overhead ratio %.2f exceeds %.2f", measurement, ratio, maxRatio )
+        );
+    }
+
+    private static void report( final String measurement, final double withoutPlugin, final double withPlugin, final String unit ) {
+        System.out.printf(
+                Locale.ROOT,
+                "%s of %d projects x %d tasks x %d variables: %.1f %s without plugin, %.1f %s with plugin%n",
+                measurement, projects, tasksPerProject, variables, withoutPlugin, unit, withPlugin, unit
+        );
+    }
+
+    private static double threshold( final String name ) {
+        return Double.parseDouble( System.getProperty( "scale." + name, thresholds.getProperty( name ) ) );
+    }
+
+    /**
+     * Extracts a measured value from a build and its duration in milliseconds.
+     */
+    @FunctionalInterface
+    private interface Extractor {
+
+        double extract( BuildResult result, double millis );
+    }
+}
@@ -8,12 +8,19 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class EnvironmentPluginTest {
 
@@ -115,6 +122,556 @@ class EnvironmentPluginTest {
         assertEnvironmentOutput( new String[]{ "test-token", "macos", "1000000" }, result );
     }
 
+    @Test
+    void testEnvironmentPluginDoesNotRealizeUnrequestedTasks() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'java'
+                            id 'ru.micromagicman.environment'
+                        }
+                        tasks.register('lazyExec', JavaExec) {
+                            println 'lazyExec realized'
+                        }
+                        tasks.register('lazyTask') {
+                            println 'lazyTask realized'
+                        }
+                        """
+        );
+        testProject.addFile(
+                ".env",
+                """
+                        API_TOKEN=test-token
+                        """
+        );
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "help" )
+                .withPluginClasspath()
+                .build();
+        final BuildTask help = result.task( ":help" );
+        assertNotNull( help );
+        assertEquals( TaskOutcome.SUCCESS, help.getOutcome() );
+        assertFalse( result.getOutput().contains( "lazyExec realized" ), "JavaExec task was realized" );
+        assertFalse( result.getOutput().contains( "lazyTask realized" ), "Task was realized" );
+    }
+
+    @Test
+    void testEnvironmentPluginAppliesEnvironmentOnlyToExecutedTasks() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'java'
+                            id 'ru.micromagicman.environment'
+                        }
+                        tasks.create('eagerExec', JavaExec) {
+                            mainClass = 'Application'
+                        }
+                        """
+        );
+        testProject.addFile(
+                ".env",
+                """
+                        A=${B}
+                        B=${A}
+                        """
+        );
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withPluginClasspath();
+        final BuildResult help = runner.withArguments( "help" ).build();
+        final BuildTask helpTask = help.task( ":help" );
+        assertNotNull( helpTask );
+        assertEquals( TaskOutcome.SUCCESS, helpTask.getOutcome() );
+
+        final BuildResult exec = runner.withArguments( "eagerExec" ).buildAndFail();
+        assertTrue( exec.getOutput().contains( "Cyclic reference in environment variables: A -> B -> A" ) );
+    }
+
+    @Test
+    void testEnvironmentPluginKeepsVariablesSetByBuildScript() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        tasks.register('printEnvironment', Exec) {
+                            environment 'DB_HOST', 'script'
+                            commandLine 'sh', '-c', 'echo "ENVIRONMENT=$DB_HOST|$DB_PORT"'
+                        }
+                        """
+        );
+        testProject.addFile( ".env", "DB_HOST=localhost\nDB_PORT=5432\n" );
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "printEnvironment", "--configuration-cache" )
+                .withPluginClasspath()
+                .build();
+        assertTrue( result.getOutput().contains( "ENVIRONMENT=script|5432" ), result.getOutput() );
+    }
+
+    @Test
+    void testEnvironmentPluginWithConfigurationCache() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'java'
+                            id 'application'
+                            id 'ru.micromagicman.environment'
+                        }
+                        application {
+                            mainClass = 'Application'
+                        }
+                        """
+        );
+        testProject.addFile(
+                ".env",
+                """
+                        API_TOKEN=test-token
+                        OS_NAME=macos
+                        MILLION=1000000
+                        """
+        );
+        testProject.addFile(
+                "src/main/java/Application.java",
+                """
+                        class Application {
+                            public static void main(final String[] args) {
+                                System.out.println("Application started");
+                                System.out.println(System.getenv("API_TOKEN"));
+                                System.out.println(System.getenv("OS_NAME"));
+                                System.out.println(System.getenv("MILLION"));
+                                System.out.println("Application ended");
+                            }
+                        }
+                        """
+        );
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "run", "--configuration-cache" )
+                .withPluginClasspath();
+        final BuildResult first = runner.build();
+        assertTrue( first.getOutput().contains( "Configuration cache entry stored" ) );
+        assertEnvironmentOutput( new String[]{ "test-token", "macos", "1000000" }, first );
+
+        final BuildResult second = runner.build();
+        assertTrue( second.getOutput().contains( "Reusing configuration cache" ) );
+        assertEnvironmentOutput( new String[]{ "test-token", "macos", "1000000" }, second );
+
+        testProject.addFile(
+                ".env",
+                """
+                        API_TOKEN=another-token
+                        OS_NAME=linux
+                        MILLION=1000000
+                        """
+        );
+        final BuildResult third = runner.build();
+        assertTrue( third.getOutput().contains( "configuration cache cannot be reused because file '.env' has changed" ) );
+        assertEnvironmentOutput( new String[]{ "another-token", "linux", "1000000" }, third );
+    }
+
+    @Test
+    void testEnvironmentPluginLayers() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'java'
+                            id 'application'
+                            id 'ru.micromagicman.environment'
+                        }
+                        application {
+                            mainClass = 'Application'
+                        }
+                        environment {
+                            task('run', [MILLION: 'task'])
+                        }
+                        """
+        );
+        testProject.addFile(
+                ".env",
+                """
+                        API_TOKEN=test-token
+                        OS_NAME=macos
+                        MILLION=1000000
+                        """
+        );
+        testProject.addFile( ".env.local", "OS_NAME=local\n" );
+        testProject.addFile( ".env.ci", "API_TOKEN=ci-token\n" );
+        testProject.addFile(
+                "src/main/java/Application.java",
+                """
+                        class Application {
+                            public static void main(final String[] args) {
+                                System.out.println("Application started");
+                                System.out.println(System.getenv("API_TOKEN"));
+                                System.out.println(System.getenv("OS_NAME"));
+                                System.out.println(System.getenv("MILLION"));
+                                System.out.println("Application ended");
+                            }
+                        }
+                        """
+        );
+        final BuildResult withoutProfile = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "run" )
+                .withPluginClasspath()
+                .build();
+        assertEnvironmentOutput( new String[]{ "test-token", "local", "task" }, withoutProfile );
+
+        final BuildResult withProfile = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "run", "-Penv=ci" )
+                .withPluginClasspath()
+                .build();
+        assertEnvironmentOutput( new String[]{ "ci-token", "local", "task" }, withProfile );
+    }
+
+    @Test
+    void testEnvironmentPluginWithRules() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        environment {
+                            task('migrate', [AWS_REGION: 'override'])
+                            include {
+                                tasks 'migrate'
+                                keys 'DB_'
+                            }
+                            exclude {
+                                types Exec
+                                keys 'DB_PASSWORD'
+                            }
+                        }
+                        ['migrate', 'deploy'].each { name ->
+                            tasks.register(name, Exec) {
+                                commandLine 'sh', '-c', 'echo "' + name + ': $DB_URL|$DB_PASSWORD|$AWS_REGION"'
+                            }
+                        }
+                        """
+        );
+        testProject.addFile(
+                ".env",
+                """
+                        DB_HOST=localhost
+                        DB_URL=jdbc:${DB_HOST}
+                        DB_PASSWORD=secret
+                        AWS_REGION=eu
+                        """
+        );
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "migrate", "deploy", "--configuration-cache" )
+                .withPluginClasspath()
+                .build();
+        assertTrue( result.getOutput().contains( "migrate: jdbc:localhost||override" ), result.getOutput() );
+        assertTrue( result.getOutput().contains( "deploy: jdbc:localhost||eu" ), result.getOutput() );
+    }
+
+    @Test
+    void testEnvironmentPluginWithMinimalEnvironment() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        environment {
+                            inheritedVariables.add('CI_*')
+                        }
+                        tasks.register('printEnvironment', Exec) {
+                            environment 'SCRIPT_VARIABLE', 'script'
+                            commandLine 'sh', '-c', 'echo "ENVIRONMENT=$DB_HOST|$CI_JOB|$BUILD_SECRET|${PATH:+path}|$SCRIPT_VARIABLE"'
+                        }
+                        """
+        );
+        testProject.addFile( ".env", "DB_HOST=localhost\n" );
+        final Map<String, String> inherited = new HashMap<>( System.getenv() );
+        inherited.put( "CI_JOB", "42" );
+        inherited.put( "BUILD_SECRET", "secret" );
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withEnvironment( inherited )
+                .withPluginClasspath();
+        final BuildResult full = runner.withArguments( "printEnvironment", "--configuration-cache" ).build();
+        assertTrue( full.getOutput().contains( "ENVIRONMENT=localhost|42|secret|path|script" ), full.getOutput() );
+
+        final BuildResult minimal = runner
+                .withArguments( "printEnvironment", "--configuration-cache", "-Penvironment.minimal=true" )
+                .build();
+        assertTrue( minimal.getOutput().contains( "ENVIRONMENT=localhost|42||path|script" ), minimal.getOutput() );
+    }
+
+    @Test
+    void testMinimalEnvironmentIsTaskInput() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        environment {
+                            inheritedVariables.add(providers.gradleProperty('inherit').orElse('CI_*'))
+                        }
+                        tasks.register('printEnvironment', Exec) {
+                            outputs.file(layout.buildDirectory.file('out.txt'))
+                            commandLine 'sh', '-c', 'mkdir -p build && echo "$CI_JOB|$BUILD_SECRET" > build/out.txt'
+                        }
+                        """
+        );
+        final Map<String, String> inherited = new HashMap<>( System.getenv() );
+        inherited.put( "CI_JOB", "42" );
+        inherited.put( "BUILD_SECRET", "secret" );
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withEnvironment( inherited )
+                .withPluginClasspath();
+        runner.withArguments( "printEnvironment", "--configuration-cache" );
+        assertEquals( TaskOutcome.SUCCESS, outcome( runner.build(), ":printEnvironment" ) );
+        assertEquals( TaskOutcome.UP_TO_DATE, outcome( runner.build(), ":printEnvironment" ) );
+
+        runner.withArguments( "printEnvironment", "--configuration-cache", "-Penvironment.minimal=true" );
+        assertEquals( TaskOutcome.SUCCESS, outcome( runner.build(), ":printEnvironment" ) );
+        assertEquals( "42|\n", Files.readString( testProject.directory.toPath().resolve( "build/out.txt" ) ) );
+        assertEquals( TaskOutcome.UP_TO_DATE, outcome( runner.build(), ":printEnvironment" ) );
+
+        runner.withArguments( "printEnvironment", "--configuration-cache", "-Penvironment.minimal=true", "-Pinherit=BUILD_*" );
+        assertEquals( TaskOutcome.SUCCESS, outcome( runner.build(), ":printEnvironment" ) );
+        assertEquals( "|secret\n", Files.readString( testProject.directory.toPath().resolve( "build/out.txt" ) ) );
+    }
+
+    @Test
+    void testEnvironmentPluginWithDaemonCache() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'java'
+                            id 'application'
+                            id 'ru.micromagicman.environment'
+                        }
+                        application {
+                            mainClass = 'Application'
+                        }
+                        """
+        );
+        testProject.addFile( "gradle.properties", "environment.daemonCache=true\n" );
+        testProject.addFile(
+                ".env",
+                """
+                        API_TOKEN=test-token
+                        OS_NAME=macos
+                        MILLION=1000000
+                        """
+        );
+        testProject.addFile(
+                "src/main/java/Application.java",
+                """
+                        class Application {
+                            public static void main(final String[] args) {
+                                System.out.println("Application started");
+                                System.out.println(System.getenv("API_TOKEN"));
+                                System.out.println(System.getenv("OS_NAME"));
+                                System.out.println(System.getenv("MILLION"));
+                                System.out.println("Application ended");
+                            }
+                        }
+                        """
+        );
+        // builds of the same runner reuse the test kit daemon
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "run", "--info" )
+                .withPluginClasspath();
+        final BuildResult first = runner.build();
+        assertEnvironmentOutput( new String[]{ "test-token", "macos", "1000000" }, first );
+
+        final BuildResult second = runner.build();
+        assertTrue( second.getOutput().contains( "Environment file cache: 2 hits, 0 misses" ), second.getOutput() );
+        assertEnvironmentOutput( new String[]{ "test-token", "macos", "1000000" }, second );
+
+        testProject.addFile(
+                ".env",
+                """
+                        API_TOKEN=another-token
+                        OS_NAME=linux
+                        MILLION=1000000
+                        """
+        );
+        final BuildResult third = runner.build();
+        assertTrue( third.getOutput().contains( "Environment file cache: 1 hits, 1 misses" ), third.getOutput() );
+        assertEnvironmentOutput( new String[]{ "another-token", "linux", "1000000" }, third );
+
+        testProject.addFile( ".env.local", "OS_NAME=local\n" );
+        final BuildResult fourth = runner.build();
+        assertEnvironmentOutput( new String[]{ "another-token", "local", "1000000" }, fourth );
+    }
+
+    @Test
+    void testEnvironmentPluginWithEncryptedLayer() throws IOException, GeneralSecurityException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'java'
+                            id 'application'
+                            id 'ru.micromagicman.environment'
+                        }
+                        application {
+                            mainClass = 'Application'
+                        }
+                        """
+        );
+        testProject.addFile(
+                ".env",
+                """
+                        API_TOKEN=placeholder
+                        OS_NAME=macos
+                        """
+        );
+        final String key = "MDEyMzQ1Njc4OWFiY2RlZg==";
+        testProject.addFile( "secrets/env.key", key + "\n" );
+        testProject.addFile( "gradle.properties", "environment.keyFile=secrets/env.key\n" );
+        testProject.addFile( ".env.enc", EnvFileCipher.encrypt(
+                "API_TOKEN=secret-token\nMILLION=1000000\n".getBytes( StandardCharsets.UTF_8 ),
+                EnvFileCipher.readKey( key.getBytes( StandardCharsets.US_ASCII ) )
+        ) );
+        testProject.addFile(
+                "src/main/java/Application.java",
+                """
+                        class Application {
+                            public static void main(final String[] args) {
+                                System.out.println("Application started");
+                                System.out.println(System.getenv("API_TOKEN"));
+                                System.out.println(System.getenv("OS_NAME"));
+                                System.out.println(System.getenv("MILLION"));
+                                System.out.println("Application ended");
+                            }
+                        }
+                        """
+        );
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "run", "generateExampleEnvFile", "--configuration-cache" )
+                .withPluginClasspath()
+                .build();
+        assertEnvironmentOutput( new String[]{ "secret-token", "macos", "1000000" }, result );
+        testProject.assertProjectFile( ".env.example", "API_TOKEN=\nOS_NAME=macos\nMILLION=\n" );
+
+        testProject.addFile( "gradle.properties", "environment.keyFile=missing.key\n" );
+        final BuildResult withoutKey = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "run" )
+                .withPluginClasspath()
+                .buildAndFail();
+        assertTrue( withoutKey.getOutput().contains( "missing.key required to decrypt" ), withoutKey.getOutput() );
+    }
+
+    @Test
+    void testEnvironmentPluginWithForkIndex() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        tasks.register('printDatabase', Exec) {
+                            commandLine 'sh', '-c', 'echo "DATABASE=$DB_URL"'
+                        }
+                        """
+        );
+        testProject.addFile(
+                ".env",
+                """
+                        DB_PORT=543${fork.index}
+                        DB_URL=jdbc:postgresql://localhost:${DB_PORT}/test_${fork.index}
+                        """
+        );
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "printDatabase", "--configuration-cache" )
+                .withPluginClasspath()
+                .build();
+        assertTrue(
+                result.getOutput().contains( "DATABASE=jdbc:postgresql://localhost:5430/test_0" ),
+                result.getOutput()
+        );
+    }
+
+    @Test
+    void testEnvironmentIsTaskInput() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        tasks.register('cachedExec', Exec) {
+                            outputs.file(layout.buildDirectory.file('out.txt'))
+                            outputs.cacheIf { true }
+                            commandLine 'sh', '-c', 'mkdir -p build && echo "$MILLION" > build/out.txt'
+                        }
+                        """
+        );
+        testProject.addFile( ".env", "MILLION=1000000\nAPI_TOKEN=secret\n" );
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "cachedExec", "--build-cache", "--configuration-cache" )
+                .withPluginClasspath();
+        assertEquals( TaskOutcome.SUCCESS, outcome( runner.build(), ":cachedExec" ) );
+        assertEquals( TaskOutcome.UP_TO_DATE, outcome( runner.build(), ":cachedExec" ) );
+
+        testProject.addFile( ".env", "MILLION=1000000\nAPI_TOKEN=another-secret\n" );
+        assertEquals( TaskOutcome.SUCCESS, outcome( runner.build(), ":cachedExec" ) );
+
+        testProject.addFile( ".env", "MILLION=1000000\nAPI_TOKEN=secret\n" );
+        assertEquals( TaskOutcome.FROM_CACHE, outcome( runner.build(), ":cachedExec" ) );
+    }
+
+    @Test
+    void testEnvironmentPluginWithFileReference() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        tasks.register('printCertificate', Exec) {
+                            outputs.file(layout.buildDirectory.file('out.txt'))
+                            commandLine 'sh', '-c', 'mkdir -p build && echo "CERTIFICATE=$CERTIFICATE" | tee build/out.txt'
+                        }
+                        """
+        );
+        testProject.addFile( ".env", "CERTS_DIR=certs\nCERTIFICATE=@file:${CERTS_DIR}/server.pem\n" );
+        testProject.addFile( "certs/server.pem", "first" );
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "printCertificate", "--configuration-cache" )
+                .withPluginClasspath();
+        final BuildResult result = runner.build();
+        assertTrue( result.getOutput().contains( "CERTIFICATE=first" ), result.getOutput() );
+        assertEquals( TaskOutcome.UP_TO_DATE, outcome( runner.build(), ":printCertificate" ) );
+
+        testProject.addFile( "certs/server.pem", "second" );
+        final BuildResult changed = runner.build();
+        assertEquals( TaskOutcome.SUCCESS, outcome( changed, ":printCertificate" ) );
+        assertTrue( changed.getOutput().contains( "CERTIFICATE=second" ), changed.getOutput() );
+    }
+
+    private static TaskOutcome outcome( final BuildResult result, final String taskPath ) {
+        final BuildTask task = result.task( taskPath );
+        assertNotNull( task, result.getOutput() );
+        return task.getOutcome();
+    }
+
     private void assertEnvironmentOutput( final String[] expectedOutput, final BuildResult result ) {
         final String output = result.getOutput();
         final Matcher matcher = APPLICATION_OUTPUT_PATTERN.matcher( output );
@@ -0,0 +1,100 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvironmentReportTaskTest {
+
+    private TestProject testProject;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testProject = new TestProject( "gradle-environment-report-test" );
+        testProject.addFile( "settings.gradle", "include 'sub'\n" );
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        tasks.register('printEnvironment', Exec) {
+                            commandLine 'java', '-version'
+                        }
+                        """
+        );
+        testProject.addFile( "sub/build.gradle", "apply plugin: 'ru.micromagicman.environment'\n" );
+        testProject.addFile( ".env", "API_TOKEN=test-token\nOS_NAME=macos\n" );
+        testProject.addFile( "sub/.env", "<script>=1\n" );
+    }
+
+    @Test
+    void testEnvironmentReport() throws IOException {
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "printEnvironment", "generateExampleEnvFile", "environmentReport" )
+                .withPluginClasspath()
+                .build();
+        final BuildTask task = result.task( ":environmentReport" );
+        assertNotNull( task );
+        assertEquals( TaskOutcome.SUCCESS, task.getOutcome() );
+
+        final String json = readReport( "build/reports/environment/environment.json" );
+        assertTrue( json.contains( "\"project\": \":\"" ), json );
+        assertTrue( json.contains( "\"subject\": \":printEnvironment\", \"operation\": \"apply\"" ), json );
+        assertTrue( json.contains( "\"subject\": \".env\", \"operation\": \"parse\", \"bytes\": 35, \"variables\": 2" ), json );
+        assertTrue( json.contains( "\"subject\": \":generateExampleEnvFile\", \"operation\": \"merge\"" ), json );
+        assertTrue( json.contains( "\"subject\": \":sub:generateExampleEnvFile\", \"operation\": \"flush\"" ), json );
+        final String html = readReport( "build/reports/environment/environment.html" );
+        assertTrue( html.contains( "<td>:printEnvironment</td><td>apply</td>" ), html );
+
+        final String subprojectJson = readReport( "sub/build/reports/environment/environment.json" );
+        assertTrue( subprojectJson.contains( "\"project\": \":sub\"" ), subprojectJson );
+        assertFalse( subprojectJson.contains( "\"project\": \":\"," ), subprojectJson );
+    }
+
+    @Test
+    void testEnvironmentReportRunsAfterMeasuredTasks() throws IOException {
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "environmentReport", "printEnvironment", "generateExampleEnvFile" )
+                .withPluginClasspath()
+                .build();
+        final List<String> paths = result.getTasks().stream().map( BuildTask::getPath ).toList();
+        assertTrue( paths.indexOf( ":environmentReport" ) > paths.indexOf( ":printEnvironment" ), paths.toString() );
+        assertTrue( paths.indexOf( ":environmentReport" ) > paths.indexOf( ":validateEnvironment" ), paths.toString() );
+        assertTrue( paths.indexOf( ":environmentReport" ) > paths.indexOf( ":generateExampleEnvFile" ), paths.toString() );
+        final String json = readReport( "build/reports/environment/environment.json" );
+        assertTrue( json.contains( "\"subject\": \":printEnvironment\", \"operation\": \"apply\"" ), json );
+    }
+
+    @Test
+    void testEnvironmentReportIsNeverUpToDate() {
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "environmentReport" )
+                .withPluginClasspath();
+        for ( final BuildResult result : List.of( runner.build(), runner.build() ) ) {
+            final BuildTask task = result.task( ":environmentReport" );
+            assertNotNull( task );
+            assertEquals( TaskOutcome.SUCCESS, task.getOutcome() );
+        }
+    }
+
+    private String readReport( final String path ) throws IOException {
+        return Files.readString( new File( testProject.directory, path ).toPath() );
+    }
+}
@@ -0,0 +1,65 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+import ru.micromagicman.gradle.environment.EnvironmentMetricsService.Measurement;
+import ru.micromagicman.gradle.environment.EnvironmentMetricsService.Operation;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvironmentReportTest {
+
+    private static final List<Measurement> MEASUREMENTS = List.of(
+            new Measurement( ":", ".env", Operation.PARSE, 120, 4, 1_500_000 ),
+            new Measurement( ":app", ":app:run", Operation.APPLY, EnvironmentMetricsService.UNKNOWN_BYTES, 4, 2_000_000 ),
+            new Measurement( ":app", ".env \"<local>\"", Operation.PARSE, 30, 1, 250_000 )
+    );
+
+    @Test
+    void testBelongsTo() {
+        final Measurement measurement = MEASUREMENTS.get( 1 );
+        assertTrue( EnvironmentReport.belongsTo( measurement, ":" ) );
+        assertTrue( EnvironmentReport.belongsTo( measurement, ":app" ) );
+        assertFalse( EnvironmentReport.belongsTo( measurement, ":ap" ) );
+        assertFalse( EnvironmentReport.belongsTo( measurement, ":app:sub" ) );
+    }
+
+    @Test
+    void testJson() {
+        assertEquals(
+                """
+                        {
+                          "project": ":",
+                          "totals": {
+                            "parse": { "count": 2, "variables": 5, "bytes": 150, "millis": 1.750 },
+                            "apply": { "count": 1, "variables": 4, "bytes": 0, "millis": 2.000 },
+                            "merge": { "count": 0, "variables": 0, "bytes": 0, "millis": 0.000 },
+                            "flush": { "count": 0, "variables": 0, "bytes": 0, "millis": 0.000 }
+                          },
+                          "measurements": [
+                            { "project": ":app", "subject": ":app:run", "operation": "apply", "bytes": -1, "variables": 4, "millis": 2.000 },
+                            { "project": ":", "subject": ".env", "operation": "parse", "bytes": 120, "variables": 4, "millis": 1.500 },
+                            { "project": ":app", "subject": ".env \\"<local>\\"", "operation": "parse", "bytes": 30, "variables": 1, "millis": 0.250 }
+                          ]
+                        }
+                        """,
+                new EnvironmentReport( ":", MEASUREMENTS ).toJson()
+        );
+    }
+
+    @Test
+    void testEmptyJson() {
+        assertTrue( new EnvironmentReport( ":", List.of() ).toJson().endsWith( "\"measurements\": []\n}\n" ) );
+    }
+
+    @Test
+    void testHtml() {
+        final String html = new EnvironmentReport( ":", MEASUREMENTS ).toHtml();
+        assertTrue( html.contains( "<td>.env &quot;&lt;local&gt;&quot;</td>" ), html );
+        assertTrue( html.contains( "<td>:app:run</td><td>apply</td><td class=\"number\"></td>" ), html );
+        assertTrue( html.indexOf( ":app:run" ) < html.indexOf( "<td>.env</td>" ), html );
+    }
+}
@@ -0,0 +1,93 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvironmentSettingsPluginTest {
+
+    private TestProject testProject;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testProject = new TestProject( "gradle-environment-settings-plugin-test" );
+        testProject.addFile(
+                "settings.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment.settings'
+                        }
+                        include 'first', 'second', 'nested:third'
+                        """
+        );
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment' apply false
+                        }
+                        allprojects {
+                            apply plugin: 'ru.micromagicman.environment'
+                            tasks.register('printName', Exec) {
+                                commandLine 'java', '-version'
+                                doLast { task ->
+                                    println "NAME of ${task.path}: ${task.environment.NAME}"
+                                }
+                            }
+                        }
+                        """
+        );
+        testProject.addFile( ".env", "NAME=root\n" );
+        testProject.addFile( "first/.env", "NAME=first\n" );
+        testProject.addFile( "second/.env", "NAME=second\n" );
+        testProject.addFile( "nested/third/.env", "NAME=third\n" );
+    }
+
+    @Test
+    void testEnvironmentFilesAreParsedBySettingsPlugin() {
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "printName", "--info" )
+                .withPluginClasspath()
+                .build();
+        final String output = result.getOutput();
+        assertTrue( output.contains( "NAME of :printName: root" ), output );
+        assertTrue( output.contains( "NAME of :first:printName: first" ), output );
+        assertTrue( output.contains( "NAME of :second:printName: second" ), output );
+        assertTrue( output.contains( "NAME of :nested:third:printName: third" ), output );
+        assertTrue( output.contains( "Environment file cache: 4 hits, 4 misses" ), output );
+    }
+
+    @Test
+    void testOnlyRequestedProjectsAreParsedBySettingsPlugin() {
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( ":first:printName", "nested:third:printName", "--info" )
+                .withPluginClasspath()
+                .build();
+        final String output = result.getOutput();
+        assertTrue( output.contains( "NAME of :first:printName: first" ), output );
+        assertTrue( output.contains( "NAME of :nested:third:printName: third" ), output );
+        assertFalse( output.contains( "NAME of :second:printName" ), output );
+        assertTrue( output.contains( "Environment file cache: 2 hits, 2 misses" ), output );
+    }
+
+    @Test
+    void testSettingsPluginWithConfigurationCache() throws IOException {
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "printName", "--configuration-cache" )
+                .withPluginClasspath();
+        assertTrue( runner.build().getOutput().contains( "NAME of :first:printName: first" ) );
+        testProject.addFile( "first/.env", "NAME=changed\n" );
+        final String output = runner.build().getOutput();
+        assertTrue( output.contains( "configuration cache cannot be reused because file 'first/.env' has changed" ), output );
+        assertTrue( output.contains( "NAME of :first:printName: changed" ), output );
+    }
+}
@@ -0,0 +1,38 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.services.BuildServiceParameters;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ForkSlotServiceTest {
+
+    @Test
+    void testConcurrentTasksLeaseDifferentSlots() {
+        final ForkSlotService slots = forkSlotService();
+        assertEquals( 0, slots.lease( ":a:test" ) );
+        assertEquals( 1, slots.lease( ":b:test" ) );
+        assertEquals( 0, slots.lease( ":a:test" ) );
+        assertEquals( 2, slots.lease( ":c:test" ) );
+    }
+
+    @Test
+    void testReleasedSlotIsReused() {
+        final ForkSlotService slots = forkSlotService();
+        slots.lease( ":a:test" );
+        slots.lease( ":b:test" );
+        slots.release( ":a:test" );
+        slots.release( ":unknown:test" );
+        assertEquals( 0, slots.lease( ":c:test" ) );
+        assertEquals( 2, slots.lease( ":d:test" ) );
+    }
+
+    private static ForkSlotService forkSlotService() {
+        return new ForkSlotService() {
+            @Override
+            public BuildServiceParameters.None getParameters() {
+                return null;
+            }
+        };
+    }
+}
@@ -7,10 +7,12 @@ import org.gradle.testkit.runner.TaskOutcome;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.io.IOException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static ru.micromagicman.gradle.environment.GenerateExampleEnvFileTask.OUTPUT_FILE_DEFAULT_FILENAME;
 
 class GenerateExampleEnvFileTaskTest {
@@ -154,6 +156,185 @@ class GenerateExampleEnvFileTaskTest {
         );
     }
 
+    @Test
+    void testCreateExampleEnvFileTaskWithConfigurationCache() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        """
+        );
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "generateExampleEnvFile", "--configuration-cache" )
+                .withPluginClasspath();
+        final BuildResult first = runner.build();
+        assertTrue( first.getOutput().contains( "Configuration cache entry stored" ) );
+        final BuildResult second = runner.build();
+        assertTrue( second.getOutput().contains( "Reusing configuration cache" ) );
+        final BuildTask task = second.task( ":generateExampleEnvFile" );
+        assertNotNull( task );
+        testProject.assertProjectFile(
+                OUTPUT_FILE_DEFAULT_FILENAME,
+                """
+                        API_TOKEN=
+                        OS_NAME=macos
+                        MILLION=1000000
+                        """
+        );
+    }
+
+    @Test
+    void testCreateExampleEnvFileTaskUpToDate() throws IOException {
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        """
+        );
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "generateExampleEnvFile" )
+                .withPluginClasspath();
+        assertTaskOutcome( TaskOutcome.SUCCESS, runner.build() );
+        assertTaskOutcome( TaskOutcome.UP_TO_DATE, runner.build() );
+        testProject.addFile(
+                ".env",
+                """
+                        API_TOKEN=test-token
+                        OS_NAME=linux
+                        """
+        );
+        assertTaskOutcome( TaskOutcome.SUCCESS, runner.build() );
+        testProject.assertProjectFile(
+                OUTPUT_FILE_DEFAULT_FILENAME,
+                """
+                        API_TOKEN=
+                        OS_NAME=linux
+                        """
+        );
+    }
+
+    @Test
+    void testCreateExampleEnvFileTaskFromCache() throws IOException {
+        testProject.addFile(
+                "settings.gradle",
+                """
+                        buildCache {
+                            local {
+                                directory = file('build-cache')
+                            }
+                        }
+                        """
+        );
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        """
+        );
+        final GradleRunner runner = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "generateExampleEnvFile", "--build-cache" )
+                .withPluginClasspath();
+        assertTaskOutcome( TaskOutcome.SUCCESS, runner.build() );
+        assertTrue( new File( testProject.directory, OUTPUT_FILE_DEFAULT_FILENAME ).delete() );
+        assertTaskOutcome( TaskOutcome.FROM_CACHE, runner.build() );
+        testProject.assertProjectFile(
+                OUTPUT_FILE_DEFAULT_FILENAME,
+                """
+                        API_TOKEN=
+                        OS_NAME=macos
+                        MILLION=1000000
+                        """
+        );
+    }
+
+    @Test
+    void testCreateExampleEnvFileTaskKeepsLiteralValues() throws IOException {
+        testProject.addFile(
+                ".env",
+                """
+                        PATTERN='^a$'
+                        TEMPLATE='${PATTERN}'
+                        """
+        );
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        """
+        );
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "generateExampleEnvFile" )
+                .withPluginClasspath()
+                .build();
+        assertTaskOutcome( TaskOutcome.SUCCESS, result );
+        testProject.assertProjectFile(
+                OUTPUT_FILE_DEFAULT_FILENAME,
+                """
+                        PATTERN='^a$'
+                        TEMPLATE='${PATTERN}'
+                        """
+        );
+        assertEquals( "^a$", EnvFile.read( testProject.directory, EnvFile.DEFAULT_FILE_NAME ).all().get( "PATTERN" ) );
+    }
+
+    @Test
+    void testCreateExampleEnvFileTaskKeepsLayoutOfExistingFile() throws IOException {
+        testProject.addFile(
+                OUTPUT_FILE_DEFAULT_FILENAME,
+                """
+                        # credentials
+                        API_TOKEN=
+
+                        # removed
+                        REMOVED=value
+                        OS_NAME=linux # the operating system
+                        """
+        );
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        """
+        );
+        final BuildResult result = GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "generateExampleEnvFile" )
+                .withPluginClasspath()
+                .build();
+        assertTaskOutcome( TaskOutcome.SUCCESS, result );
+        testProject.assertProjectFile(
+                OUTPUT_FILE_DEFAULT_FILENAME,
+                """
+                        # credentials
+                        API_TOKEN=
+
+                        # removed
+                        OS_NAME=macos
+                        MILLION=1000000
+                        """
+        );
+    }
+
+    private static void assertTaskOutcome( final TaskOutcome expected, final BuildResult result ) {
+        final BuildTask task = result.task( ":generateExampleEnvFile" );
+        assertNotNull( task );
+        assertEquals( expected, task.getOutcome() );
+    }
+
     private void createProjectEnvFile() throws IOException {
         testProject.addFile(
                 ".env",
@@ -0,0 +1,110 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class GenerateExampleEnvFilesTaskTest {
+
+    private static final String PLUGIN = """
+            plugins {
+                id 'ru.micromagicman.environment'
+            }
+            """;
+
+    private TestProject testProject;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testProject = new TestProject( "gradle-environment-plugin-aggregate-test" );
+        testProject.addFile(
+                "settings.gradle",
+                """
+                        include 'app', 'lib', 'docs', 'plain'
+                        """
+        );
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        generateExampleEnvFile {
+                            sensitiveValuePatterns = ['token', 'secret']
+                        }
+                        """
+        );
+        testProject.addFile(
+                "app/build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        generateExampleEnvFile {
+                            sensitiveValuePatterns = ['token', 'app_*']
+                        }
+                        """
+        );
+        testProject.addFile( "lib/build.gradle", PLUGIN );
+        testProject.addFile( "docs/build.gradle", PLUGIN );
+        testProject.addFile( "plain/build.gradle", "" );
+        testProject.addFile( ".env", "ROOT_SECRET=root\nROOT_NAME=root\n" );
+        testProject.addFile( "app/.env", "API_TOKEN=token\nAPP_NAME=app\nAPI_URL=url\n" );
+        testProject.addFile( "lib/.env", "LIB_NAME=lib\n" );
+    }
+
+    @Test
+    void testGenerateExampleEnvFilesOfAllProjects() throws IOException {
+        final BuildResult result = build();
+        assertOutcome( TaskOutcome.SUCCESS, result, ":generateExampleEnvFile" );
+        assertOutcome( TaskOutcome.SUCCESS, result, ":app:generateExampleEnvFile" );
+        assertOutcome( TaskOutcome.SUCCESS, result, ":lib:generateExampleEnvFile" );
+        assertNull( result.task( ":docs:generateExampleEnvFile" ) );
+        testProject.assertProjectFile( ".env.example", "ROOT_SECRET=\nROOT_NAME=root\n" );
+        assertExampleFile( "app", "API_TOKEN=\nAPP_NAME=\nAPI_URL=url\n" );
+        assertExampleFile( "lib", "LIB_NAME=lib\n" );
+        assertFalse( new File( testProject.directory, "docs/.env.example" ).exists() );
+        assertFalse( new File( testProject.directory, "plain/.env.example" ).exists() );
+
+        final BuildResult second = build();
+        assertOutcome( TaskOutcome.UP_TO_DATE, second, ":app:generateExampleEnvFile" );
+        assertOutcome( TaskOutcome.UP_TO_DATE, second, ":generateExampleEnvFiles" );
+
+        testProject.addFile( "docs/.env", "DOCS_NAME=docs\n" );
+        final BuildResult third = build();
+        assertOutcome( TaskOutcome.SUCCESS, third, ":docs:generateExampleEnvFile" );
+        assertOutcome( TaskOutcome.UP_TO_DATE, third, ":app:generateExampleEnvFile" );
+        assertExampleFile( "docs", "DOCS_NAME=docs\n" );
+    }
+
+    private BuildResult build() {
+        return GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( "generateExampleEnvFiles", "--configuration-cache", "--parallel" )
+                .withPluginClasspath()
+                .build();
+    }
+
+    private static void assertOutcome( final TaskOutcome expected, final BuildResult result, final String taskPath ) {
+        final BuildTask task = result.task( taskPath );
+        assertNotNull( task, result.getOutput() );
+        assertEquals( expected, task.getOutcome(), taskPath );
+    }
+
+    private void assertExampleFile( final String project, final String expectedContent ) throws IOException {
+        final File file = new File( testProject.directory, project + "/" + GenerateExampleEnvFileTask.OUTPUT_FILE_DEFAULT_FILENAME );
+        assertEquals( expectedContent, Files.readString( file.toPath() ) );
+    }
+}
@@ -0,0 +1,68 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MinimalEnvironmentTest {
+
+    @Test
+    void testInheritsNamesAndGlobsIgnoringCase() {
+        final MinimalEnvironment environment = MinimalEnvironment.compile( List.of( "PATH", "LC_*", "JAVA_HOM?" ) );
+        assertTrue( environment.inherits( "PATH" ) );
+        assertTrue( environment.inherits( "Path" ) );
+        assertTrue( environment.inherits( "LC_ALL" ) );
+        assertTrue( environment.inherits( "lc_ctype" ) );
+        assertTrue( environment.inherits( "JAVA_HOME" ) );
+        assertFalse( environment.inherits( "PATHEXT" ) );
+        assertFalse( environment.inherits( "CI_JOB_TOKEN" ) );
+    }
+
+    @Test
+    void testDefaultInheritedVariables() {
+        final MinimalEnvironment environment = MinimalEnvironment.compile( MinimalEnvironment.DEFAULT_INHERITED_VARIABLES );
+        assertTrue( environment.inherits( "HOME" ) );
+        assertTrue( environment.inherits( "SystemRoot" ) );
+        assertFalse( environment.inherits( "GITHUB_TOKEN" ) );
+    }
+
+    @Test
+    void testVariablesOverrideInheritedOnes() {
+        final Map<String, String> current = new LinkedHashMap<>();
+        current.put( "PATH", "/usr/bin" );
+        current.put( "HOME", "/home/ci" );
+        current.put( "CI_JOB_TOKEN", "secret" );
+        final Map<String, Object> environment = MinimalEnvironment.compile( List.of( "PATH", "HOME" ) )
+                .of( current, current, Map.of( "HOME", "/tmp/home", "DB_HOST", "localhost" ) );
+        assertEquals( Map.of( "PATH", "/usr/bin", "HOME", "/tmp/home", "DB_HOST", "localhost" ), environment );
+    }
+
+    @Test
+    void testVariablesSetByBuildScriptAreKept() {
+        final Map<String, String> inherited = Map.of( "PATH", "/usr/bin", "CI_JOB_TOKEN", "secret", "HOME", "/home/ci" );
+        final Map<String, Object> current = new LinkedHashMap<>( inherited );
+        current.put( "HOME", "/tmp/home" );
+        current.put( "SCRIPT_VARIABLE", "script" );
+        final Map<String, Object> environment = MinimalEnvironment.compile( List.of( "PATH" ) )
+                .of( current, inherited, Map.of( "SCRIPT_VARIABLE", "env", "DB_HOST", "localhost" ) );
+        assertEquals(
+                Map.of( "PATH", "/usr/bin", "HOME", "/tmp/home", "SCRIPT_VARIABLE", "script", "DB_HOST", "localhost" ),
+                environment
+        );
+    }
+
+    @Test
+    void testEmptyAllowlist() {
+        assertEquals(
+                Map.of( "A", "1" ),
+                MinimalEnvironment.compile( List.of() )
+                        .of( Map.of( "PATH", "/usr/bin" ), Map.of( "PATH", "/usr/bin" ), Map.of( "A", "1" ) )
+        );
+    }
+}
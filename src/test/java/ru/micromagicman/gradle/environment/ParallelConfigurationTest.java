@@ -0,0 +1,178 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.api.provider.Property;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stress tests configuring many projects in parallel, which share environment snapshots and build services.
+ */
+class ParallelConfigurationTest {
+
+    private static final int THREADS = 16;
+    private static final int PROJECTS = 200;
+    private static final int BUILD_PROJECTS = 40;
+
+    @Test
+    void testSnapshotsAreSharedBetweenThreads() throws Exception {
+        final TestProject testProject = new TestProject( "parallel-configuration-test" );
+        final List<File> files = new ArrayList<>();
+        for ( int project = 0; project < PROJECTS; project++ ) {
+            testProject.addFile( "p" + project + "/.env", "NAME=p" + project + "\nAPI_TOKEN=token\nURL=${NAME}.local\n" );
+            files.add( new File( testProject.directory, "p" + project + "/.env" ) );
+        }
+        final EnvFileCacheService cache = cacheService();
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        try {
+            final List<Future<List<EnvFile>>> futures = new ArrayList<>();
+            for ( int thread = 0; thread < THREADS; thread++ ) {
+                final int offset = thread;
+                futures.add( executor.submit( () -> {
+                    start.await();
+                    final List<EnvFile> loaded = new ArrayList<>();
+                    for ( int index = 0; index < PROJECTS; index++ ) {
+                        final int project = ( index + offset ) % PROJECTS;
+                        final EnvFile envFile = EnvFile.load( files.get( project ), cache );
+                        final Map<String, String> variables = EnvOverlay.EMPTY.with( envFile.all() )
+                                .with( Map.of( "THREAD", String.valueOf( offset ) ) )
+                                .resolved();
+                        assertEquals( "p" + project + ".local", variables.get( "URL" ) );
+                        assertEquals( String.valueOf( offset ), variables.get( "THREAD" ) );
+                        loaded.add( envFile );
+                    }
+                    loaded.sort( ( first, second ) -> first.file().compareTo( second.file() ) );
+                    return loaded;
+                } ) );
+            }
+            start.countDown();
+            final List<EnvFile> first = futures.get( 0 ).get( 1, TimeUnit.MINUTES );
+            for ( final Future<List<EnvFile>> future : futures ) {
+                final List<EnvFile> loaded = future.get( 1, TimeUnit.MINUTES );
+                for ( int index = 0; index < PROJECTS; index++ ) {
+                    assertSame( first.get( index ).all(), loaded.get( index ).all() );
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals( PROJECTS, cache.getMisses() );
+    }
+
+    @Test
+    void testBuildersAreConfinedToTheirFiles() throws Exception {
+        final TestProject testProject = new TestProject( "parallel-builders-test" );
+        testProject.addFile( ".env", "NAME=root\nAPI_TOKEN=token\n" );
+        final EnvFile source = EnvFile.read( testProject.directory, ".env" );
+        final ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        try {
+            final List<Callable<EnvFile>> tasks = new ArrayList<>();
+            for ( int project = 0; project < PROJECTS; project++ ) {
+                final File output = new File( testProject.directory, "p" + project + ".env.example" );
+                final String name = "p" + project;
+                tasks.add( () -> {
+                    final EnvFileBuilder builder = EnvFileBuilder.create( output )
+                            .mergeWith( source, key -> !key.endsWith( "TOKEN" ) )
+                            .put( "PROJECT", name );
+                    builder.flush();
+                    return builder.build();
+                } );
+            }
+            final List<Future<EnvFile>> futures = executor.invokeAll( tasks, 1, TimeUnit.MINUTES );
+            for ( int project = 0; project < PROJECTS; project++ ) {
+                final EnvFile example = futures.get( project ).get();
+                assertEquals( Map.of( "NAME", "root", "API_TOKEN", "", "PROJECT", "p" + project ), example.all() );
+                testProject.assertProjectFile( "p" + project + ".env.example", "NAME=root\nAPI_TOKEN=\nPROJECT=p" + project + "\n" );
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals( Map.of( "NAME", "root", "API_TOKEN", "token" ), source.all() );
+    }
+
+    @Test
+    void testParallelBuildWithIsolatedProjects() throws IOException {
+        final TestProject testProject = new TestProject( "gradle-environment-plugin-parallel-test" );
+        final StringBuilder settings = new StringBuilder( "rootProject.name = 'parallel'\n" );
+        final List<String> arguments = new ArrayList<>();
+        for ( int project = 0; project < BUILD_PROJECTS; project++ ) {
+            settings.append( "include 'p" ).append( project ).append( "'\n" );
+            testProject.addFile( "p" + project + "/.env", "NAME=p" + project + "\nAPI_TOKEN=token\nURL=${NAME}.local\n" );
+            testProject.addFile(
+                    "p" + project + "/build.gradle",
+                    """
+                            plugins {
+                                id 'ru.micromagicman.environment'
+                            }
+                            tasks.register( 'printEnvironment', Exec ) {
+                                commandLine 'sh', '-c', 'echo "$NAME=$URL"'
+                            }
+                            """
+            );
+            arguments.add( ":p" + project + ":printEnvironment" );
+        }
+        testProject.addFile( "settings.gradle", settings.toString() );
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment'
+                        }
+                        """
+        );
+        arguments.addAll( List.of(
+                "generateExampleEnvFiles",
+                "--parallel",
+                "--configuration-cache",
+                "-Dorg.gradle.unsafe.isolated-projects=true"
+        ) );
+        for ( int run = 0; run < 2; run++ ) {
+            final BuildResult result = GradleRunner.create()
+                    .withProjectDir( testProject.directory )
+                    .withArguments( arguments )
+                    .withPluginClasspath()
+                    .build();
+            for ( int project = 0; project < BUILD_PROJECTS; project++ ) {
+                assertTrue( result.getOutput().contains( "p" + project + "=p" + project + ".local" ), result.getOutput() );
+            }
+        }
+        for ( int project = 0; project < BUILD_PROJECTS; project++ ) {
+            assertEquals(
+                    "NAME=p" + project + "\nAPI_TOKEN=\nURL=${NAME}.local\n",
+                    Files.readString( new File( testProject.directory, "p" + project + "/.env.example" ).toPath() )
+            );
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static EnvFileCacheService cacheService() {
+        final Property<Boolean> daemonCacheProperty = mock( Property.class );
+        when( daemonCacheProperty.getOrElse( false ) ).thenReturn( false );
+        return new EnvFileCacheService() {
+            @Override
+            public Parameters getParameters() {
+                return () -> daemonCacheProperty;
+            }
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package ru.micromagicman.gradle.environment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensitiveKeyMatcherTest {
+
+    @Test
+    void testSubstringPatternsAreCaseInsensitive() {
+        final SensitiveKeyMatcher matcher = SensitiveKeyMatcher.compile( List.of( "password", "Token" ) );
+        assertTrue( matcher.test( "DB_PASSWORD" ) );
+        assertTrue( matcher.test( "api_token" ) );
+        assertFalse( matcher.test( "OS_NAME" ) );
+        assertFalse( matcher.test( "PASSWOR" ) );
+    }
+
+    @Test
+    void testOverlappingSubstringPatterns() {
+        final SensitiveKeyMatcher matcher = SensitiveKeyMatcher.compile( List.of( "he", "she", "his", "hers" ) );
+        assertTrue( matcher.test( "USHERS" ) );
+        assertTrue( matcher.test( "HIS" ) );
+        assertFalse( matcher.test( "AHI" ) );
+    }
+
+    @Test
+    void testNonAsciiSubstringPattern() {
+        final SensitiveKeyMatcher matcher = SensitiveKeyMatcher.compile( List.of( "пароль" ) );
+        assertTrue( matcher.test( "MY_ПАРОЛЬ" ) );
+        assertFalse( matcher.test( "MY_ЛОГИН" ) );
+    }
+
+    @Test
+    void testGlobPatterns() {
+        final SensitiveKeyMatcher matcher = SensitiveKeyMatcher.compile( List.of( "*_SECRET", "db?_pass" ) );
+        assertTrue( matcher.test( "APP_SECRET" ) );
+        assertFalse( matcher.test( "APP_SECRET_ID" ) );
+        assertTrue( matcher.test( "DB1_PASS" ) );
+        assertFalse( matcher.test( "DB12_PASS" ) );
+    }
+
+    @Test
+    void testRegexPatterns() {
+        final SensitiveKeyMatcher matcher = SensitiveKeyMatcher.compile( List.of( "regex:^aws_.*_key$" ) );
+        assertTrue( matcher.test( "AWS_ACCESS_KEY" ) );
+        assertFalse( matcher.test( "AWS_KEY_ID" ) );
+    }
+
+    @Test
+    void testEmptyPatterns() {
+        assertFalse( SensitiveKeyMatcher.compile( List.of() ).test( "PASSWORD" ) );
+        assertTrue( SensitiveKeyMatcher.compile( List.of( "" ) ).test( "OS_NAME" ) );
+    }
+
+    @Test
+    void testMatchesNaiveImplementation() {
+        final Random random = new Random( 42 );
+        final List<String> patterns = new ArrayList<>();
+        for ( int index = 0; index < 200; index++ ) {
+            patterns.add( randomString( random, 2 + random.nextInt( 5 ), 'a' ) );
+        }
+        final SensitiveKeyMatcher matcher = SensitiveKeyMatcher.compile( patterns );
+        for ( int index = 0; index < 10_000; index++ ) {
+            final String key = randomString( random, random.nextInt( 20 ), random.nextBoolean() ? 'a' : 'A' );
+            final boolean expected = patterns.stream().anyMatch( key.toLowerCase()::contains );
+            assertEquals( expected, matcher.test( key ), key );
+        }
+    }
+
+    private static String randomString( final Random random, final int length, final char base ) {
+        final StringBuilder builder = new StringBuilder( length );
+        for ( int index = 0; index < length; index++ ) {
+            builder.append( (char) ( base + random.nextInt( 6 ) ) );
+        }
+        return builder.toString();
+    }
+}
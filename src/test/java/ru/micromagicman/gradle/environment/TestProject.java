@@ -21,13 +21,17 @@ class TestProject {
     }
 
     void addFile( final String fileName, final String content ) throws IOException {
+        addFile( fileName, content.getBytes() );
+    }
+
+    void addFile( final String fileName, final byte[] content ) throws IOException {
         final File buildFile = new File( directory, fileName );
         final File parentDir = buildFile.getParentFile();
         if ( !parentDir.exists() && !parentDir.mkdirs() ) {
             throw new IOException( "Can't create parent directory: " + parentDir );
         }
         try ( final OutputStream outputStream = new FileOutputStream( buildFile ) ) {
-            outputStream.write( content.getBytes() );
+            outputStream.write( content );
         }
     }
 
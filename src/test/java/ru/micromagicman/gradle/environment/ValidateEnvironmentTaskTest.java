@@ -0,0 +1,123 @@
+package ru.micromagicman.gradle.environment;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidateEnvironmentTaskTest {
+
+    private TestProject testProject;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        testProject = new TestProject( "gradle-environment-plugin-validation-test" );
+        testProject.addFile( "settings.gradle", "include 'app'\n" );
+        testProject.addFile(
+                "build.gradle",
+                """
+                        plugins {
+                            id 'ru.micromagicman.environment' apply false
+                        }
+                        allprojects {
+                            apply plugin: 'ru.micromagicman.environment'
+                            tasks.register('printPort', Exec) {
+                                commandLine 'sh', '-c', 'echo "PORT=$DB_PORT"'
+                            }
+                        }
+                        """
+        );
+        testProject.addFile( ".env", "DB_HOST=localhost\nDB_PORT=5432\n" );
+        testProject.addFile( "app/.env", "DB_HOST=app\nDB_PORT=abc\n" );
+    }
+
+    @Test
+    void testValidationIsSkippedWithoutSchema() {
+        final BuildResult result = runner( "printPort" ).build();
+        assertOutcome( TaskOutcome.NO_SOURCE, result, ":validateEnvironment" );
+        assertOutcome( TaskOutcome.NO_SOURCE, result, ":app:validateEnvironment" );
+        assertTrue( result.getOutput().contains( "PORT=abc" ), result.getOutput() );
+    }
+
+    @Test
+    void testInvalidEnvironmentFailsBeforeForking() throws IOException {
+        testProject.addFile( ".env.schema", "DB_HOST=string required\nDB_PORT=integer required min=1 max=65535\n" );
+        final BuildResult result = runner( ":app:printPort" ).buildAndFail();
+        assertOutcome( TaskOutcome.FAILED, result, ":app:validateEnvironment" );
+        assertNull( result.task( ":app:printPort" ) );
+        assertTrue( result.getOutput().contains( "DB_PORT must be an integer" ), result.getOutput() );
+
+        testProject.addFile( "app/.env.local", "DB_PORT=8080\n" );
+        final BuildResult fixed = runner( ":app:printPort" ).build();
+        assertOutcome( TaskOutcome.SUCCESS, fixed, ":app:validateEnvironment" );
+        assertTrue( fixed.getOutput().contains( "PORT=8080" ), fixed.getOutput() );
+
+        final BuildResult upToDate = runner( ":app:printPort" ).build();
+        assertOutcome( TaskOutcome.UP_TO_DATE, upToDate, ":app:validateEnvironment" );
+    }
+
+    @Test
+    void testTaskOverridesAreValidated() throws IOException {
+        testProject.addFile( ".env.schema", "DB_PORT=integer required\nAPI_URL=string required\n" );
+        testProject.addFile( "app/.env", "DB_PORT=8080\n" );
+        testProject.addFile(
+                "app/build.gradle",
+                """
+                        environment {
+                            task( 'printPort', [ API_URL: 'http://localhost', DB_PORT: 'abc' ] )
+                            task( 'test', [ API_URL: 'http://localhost' ] )
+                        }
+                        """
+        );
+        final BuildResult result = runner( ":app:printPort" ).buildAndFail();
+        assertOutcome( TaskOutcome.FAILED, result, ":app:validateEnvironment" );
+        assertTrue( result.getOutput().contains( "API_URL is required" ), result.getOutput() );
+        assertTrue( result.getOutput().contains( "DB_PORT must be an integer for printPort" ), result.getOutput() );
+        assertFalse( result.getOutput().contains( "for test" ), result.getOutput() );
+    }
+
+    @Test
+    void testVariablesOfGradleProcessAreInputs() throws IOException {
+        testProject.addFile( ".env.schema", "DB_PORT=integer required\n" );
+        testProject.addFile( "app/.env", "DB_PORT=${EXTERNAL_PORT}\n" );
+        final BuildResult result = runner( ":app:validateEnvironment" )
+                .withEnvironment( Map.of( "EXTERNAL_PORT", "8080" ) )
+                .build();
+        assertOutcome( TaskOutcome.SUCCESS, result, ":app:validateEnvironment" );
+
+        final BuildResult upToDate = runner( ":app:validateEnvironment" )
+                .withEnvironment( Map.of( "EXTERNAL_PORT", "8080" ) )
+                .build();
+        assertOutcome( TaskOutcome.UP_TO_DATE, upToDate, ":app:validateEnvironment" );
+
+        final BuildResult changed = runner( ":app:validateEnvironment" )
+                .withEnvironment( Map.of( "EXTERNAL_PORT", "abc" ) )
+                .buildAndFail();
+        assertOutcome( TaskOutcome.FAILED, changed, ":app:validateEnvironment" );
+        assertTrue( changed.getOutput().contains( "DB_PORT must be an integer" ), changed.getOutput() );
+    }
+
+    private GradleRunner runner( final String task ) {
+        return GradleRunner.create()
+                .withProjectDir( testProject.directory )
+                .withArguments( task, "--configuration-cache" )
+                .withPluginClasspath();
+    }
+
+    private static void assertOutcome( final TaskOutcome expected, final BuildResult result, final String taskPath ) {
+        final BuildTask task = result.task( taskPath );
+        assertNotNull( task, result.getOutput() );
+        assertEquals( expected, task.getOutcome() );
+    }
+}